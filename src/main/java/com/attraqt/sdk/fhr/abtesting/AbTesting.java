@@ -20,28 +20,33 @@
 package com.attraqt.sdk.fhr.abtesting;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import jakarta.ws.rs.core.UriBuilder;
-
 import com.attraqt.sdk.fhr.abtesting.caching.AbTestsCache;
 import com.attraqt.sdk.fhr.abtesting.caching.InMemoryAbTestsCache;
+import com.attraqt.sdk.fhr.abtesting.caching.SharedAbTestsCache;
+import com.attraqt.sdk.fhr.abtesting.events.AssignmentEventStream;
+import com.attraqt.sdk.fhr.abtesting.exposure.ExposureCounters;
+import com.attraqt.sdk.fhr.abtesting.matching.FilterMatchingOptions;
 import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
-import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest.RunningAbTestVariant;
 import com.attraqt.sdk.fhr.abtesting.model.SchedulingOptions;
+import com.attraqt.sdk.fhr.abtesting.model.WarmUpOptions;
+import com.attraqt.sdk.fhr.abtesting.model.WarmUpResult;
 import com.attraqt.sdk.fhr.abtesting.retrieval.BasicAuthenticationAbTestsFetcher;
+import com.attraqt.sdk.fhr.abtesting.retrieval.HttpClientAbTestsFetcher;
 import com.attraqt.sdk.fhr.abtesting.retrieval.RunningAbTestsFetcher;
 import com.attraqt.sdk.fhr.abtesting.scheduling.AbTestsRetrievalScheduler;
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshot;
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshotManager;
 import com.google.common.base.Strings;
-import com.google.common.hash.Hashing;
 
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -56,6 +61,12 @@ public class AbTesting {
 
     private static final String FH_ABTESTS_PARAMETER = "fh_abtests";
     private static final int CACHE_RETRY_TIME_MINUTES = 1;
+    // BasicAuthenticationAbTestsFetcher needs the Jersey client, its Jackson support and its HK2 injection manager.
+    private static final List<String> JERSEY_CLASS_NAMES = List.of(
+        "org.glassfish.jersey.client.ClientConfig",
+        "org.glassfish.jersey.jackson.JacksonFeature",
+        "org.glassfish.jersey.inject.hk2.Hk2InjectionManagerFactory");
+    private static final URI WARM_UP_URI = URI.create("http://localhost/fredhopper/query");
 
     public static final String DEFAULT_AB_TESTS_PATH = "/config/running/ab-tests";
     public static final int DEFAULT_CACHE_EXPIRATION_TIME_IN_MINUTES = 5;
@@ -65,7 +76,9 @@ public class AbTesting {
     /**
      * Sets the A/B Tests Cache.
      * <p>
-     * If it is not provided, {@link InMemoryAbTestsCache} will be used by default.
+     * If it is not provided, {@link InMemoryAbTestsCache} will be used by default. If it is a
+     * {@link SharedAbTestsCache}, the A/B tests are only fetched from FHR A/B Tests Service while this node holds the
+     * lease of its store, and its lease duration must be longer than cacheExpireTimeMinutes.
      *
      * @param abTestsCache An implementation of {@link AbTestsCache}
      */
@@ -74,7 +87,8 @@ public class AbTesting {
     /**
      * Sets the runningAbTestsFetcher.
      * <p>
-     * If it is not provided, {@link BasicAuthenticationAbTestsFetcher} will be used by default.
+     * If it is not provided, {@link BasicAuthenticationAbTestsFetcher} will be used by default, or
+     * {@link HttpClientAbTestsFetcher} if Jersey is not on the classpath.
      *
      * @param runningAbTestsFetcher An implementation of {@link RunningAbTestsFetcher}
      */
@@ -139,12 +153,52 @@ public class AbTesting {
      * @param readTimeoutInSeconds An integer which indicates the timeout to read from A/B tests server.
      */
     private Integer readTimeoutInSeconds;
+    /**
+     * Sets the assignmentEventStream.
+     * <p>
+     * If it is provided, every variant assignment is published to it, and it is started and shut down together with
+     * this object. If it is not provided, assignments are not recorded.
+     *
+     * @param assignmentEventStream An {@link AssignmentEventStream}
+     */
+    private AssignmentEventStream assignmentEventStream;
+    /**
+     * Sets the exposureCounters.
+     * <p>
+     * If it is provided, every variant assignment is counted in it, and its exporter is started and shut down
+     * together with this object. If it is not provided, assignments are not counted.
+     *
+     * @param exposureCounters An {@link ExposureCounters}
+     */
+    private ExposureCounters exposureCounters;
+    /**
+     * Sets the filterMatchingOptions.
+     * <p>
+     * Limits the cost of matching the filter patterns of the A/B tests against the query parameters. If it is not
+     * provided, {@link FilterMatchingOptions#DEFAULT} is used.
+     *
+     * @param filterMatchingOptions A {@link FilterMatchingOptions}
+     */
+    private FilterMatchingOptions filterMatchingOptions;
+    /**
+     * Sets the warmUpOptions.
+     * <p>
+     * If it is provided, synthetic requests are run through the matching and variant selection of newly fetched A/B
+     * tests before they are cached, within the given limits, so that the first real requests do not run cold code. If
+     * it is not provided, there is no warm-up.
+     *
+     * @param warmUpOptions A {@link WarmUpOptions}
+     */
+    private WarmUpOptions warmUpOptions;
+    private AbTestsSnapshotManager abTestsSnapshotManager;
     @Getter
     private boolean isStarted;
 
     /**
      * Fetches A/B tests and applies variant selection algorithm. Then appends fh_abtests parameter to URI. If
      * fh_abtests parameter already exists in URI it will be overwritten.
+     * <p>
+     * The rest of the URI is kept as is, and if no A/B test applies the given URI itself is returned.
      *
      * @param sessionId The sessionId
      * @param uri       The Fas request URI
@@ -152,11 +206,10 @@ public class AbTesting {
      */
     public URI appendAbTestsParameter(String sessionId, URI uri) {
         String fhAbtests = getFhAbtests(sessionId, getQueryParamsFromURI(uri));
-        UriBuilder builder = UriBuilder.fromUri(uri);
-        if (!Strings.isNullOrEmpty(fhAbtests)) {
-            builder.replaceQueryParam(FH_ABTESTS_PARAMETER, fhAbtests);
+        if (Strings.isNullOrEmpty(fhAbtests)) {
+            return uri;
         }
-        return builder.build();
+        return replaceQueryParam(uri, FH_ABTESTS_PARAMETER, fhAbtests);
     }
 
     /**
@@ -176,6 +229,15 @@ public class AbTesting {
         return fhrQueryParams;
     }
 
+    /**
+     * Returns the outcome of the last warm-up of newly fetched A/B tests.
+     *
+     * @return A {@link WarmUpResult}, or null if no warm-up has run yet or no warmUpOptions are provided.
+     */
+    public WarmUpResult getLastWarmUpResult() {
+        return abTestsRetrievalScheduler.getLastWarmUpResult();
+    }
+
     /**
      * Shuts the {@link AbTesting#abTestsRetrievalScheduler} down. The cache will no longer be updated until it is
      * started again.
@@ -183,6 +245,18 @@ public class AbTesting {
     public void shutdown() {
         abTestsRetrievalScheduler.shutdown();
 
+        if (abTestsCache instanceof SharedAbTestsCache) {
+            ((SharedAbTestsCache) abTestsCache).releaseLease();
+        }
+
+        if (assignmentEventStream != null) {
+            assignmentEventStream.shutdown();
+        }
+
+        if (exposureCounters != null) {
+            exposureCounters.shutdown();
+        }
+
         isStarted = false;
 
         log.info("Shutting down A/B tests retrieval.");
@@ -199,7 +273,15 @@ public class AbTesting {
             SchedulingOptions schedulingOptions =
                 new SchedulingOptions(cacheExpireTimeMinutes, CACHE_RETRY_TIME_MINUTES, TimeUnit.MINUTES);
 
-            abTestsRetrievalScheduler.start(abTestsCache, runningAbTestsFetcher, schedulingOptions);
+            abTestsRetrievalScheduler.start(abTestsCache, runningAbTestsFetcher, schedulingOptions, this::prepare);
+
+            if (assignmentEventStream != null) {
+                assignmentEventStream.start();
+            }
+
+            if (exposureCounters != null) {
+                exposureCounters.start();
+            }
 
             isStarted = true;
         }
@@ -216,15 +298,8 @@ public class AbTesting {
         if (abTests != null && !abTests.isEmpty()) {
             // Remove the existent fh_abtests parameter to avoid duplication
             fhrQueryParams.remove(FH_ABTESTS_PARAMETER);
-            abTests = abTests
-                .stream()
-                .filter(runningAbTest -> matchAbTestWithParams(runningAbTest, fhrQueryParams))
-                .collect(Collectors.toList());
-
-            if (!abTests.isEmpty()) {
-                // Select ab test variants for session id and return
-                return getAbTestsForSessionId(sessionId, abTests);
-            }
+            // Select ab test variants for session id and return
+            return getAbTestsForSessionId(sessionId, abTestsSnapshotManager.resolve(abTests), fhrQueryParams, true);
         } else {
             log.debug("A/B tests cache is empty. No A/B tests to match on.");
         }
@@ -232,49 +307,89 @@ public class AbTesting {
         return null;
     }
 
-    private boolean matchAbTestWithParams(RunningAbTest runningAbTest, Map<String, List<String>> params) {
-        for (Map.Entry<String, List<String>> entry : runningAbTest.getFilters().entrySet()) {
-            if (params.containsKey(entry.getKey())) {
-                for (String pattern : entry.getValue()) {
-                    List<String> values = params.get(entry.getKey());
-                    // If the filtering param occurring more than once or it's value doesn't match with the pattern
-                    if (values.size() != 1 || !values.get(0).matches(pattern)) {
-                        return false;
-                    }
-                }
-            } else {
-                return false;
+    private String getAbTestsForSessionId(String sessionId,
+                                          AbTestsSnapshot snapshot,
+                                          Map<String, List<String>> params,
+                                          boolean recordAssignments) {
+        ArrayList<String> selections = new ArrayList<>();
+        Integer sessionHash = null;
+        for (int testIndex = 0; testIndex < snapshot.getTestCount(); testIndex++) {
+            if (!snapshot.matches(testIndex, params)) {
+                continue;
             }
-        }
 
-        return true;
-    }
+            int variantIndex = snapshot.selectVariant(testIndex, sessionId);
+            if (variantIndex < 0) {
+                continue;
+            }
 
-    private String getAbTestsForSessionId(String sessionId, List<RunningAbTest> runningABTests) {
-        ArrayList<String> selections = new ArrayList<>();
-        for (RunningAbTest abTest : runningABTests) {
-            String sessionTestSelection = String.format("%s#%s", sessionId, abTest.getId());
+            selections.add(snapshot.getTestId(testIndex) + ":" + snapshot.getVariantId(testIndex, variantIndex));
+
+            if (!recordAssignments) {
+                continue;
+            }
 
-            long percentile =
-                Hashing.murmur3_32().hashUnencodedChars(sessionTestSelection).padToLong() % 100;
+            if (assignmentEventStream != null) {
+                if (sessionHash == null) {
+                    sessionHash = AssignmentEventStream.hashSessionId(sessionId);
+                }
+                assignmentEventStream.publish(sessionHash, snapshot, testIndex, variantIndex);
+            }
 
-            List<RunningAbTestVariant> variations =
-                abTest.getVariations()
-                    .stream()
-                    .sorted(Comparator.comparing(RunningAbTestVariant::hashCode))
-                    .collect(Collectors.toList());
+            if (exposureCounters != null) {
+                exposureCounters.record(snapshot, testIndex, variantIndex);
+            }
+        }
+        return selections.isEmpty() ? null : String.join(";", selections);
+    }
 
-            int acc = 0;
+    /**
+     * Builds the snapshot of newly fetched A/B tests on the retrieval thread, before they are cached, and warms it up
+     * if warmUpOptions are provided.
+     *
+     * @return The number of synthetic requests run, or -1 if there was no warm-up
+     */
+    private int prepare(List<RunningAbTest> abTests) {
+        long currentGeneration = abTestsSnapshotManager.current().getGeneration();
+        AbTestsSnapshot snapshot = abTestsSnapshotManager.update(abTests);
+        if (warmUpOptions == null || snapshot.getGeneration() == currentGeneration || snapshot.getTestCount() == 0) {
+            return -1;
+        }
+        return warmUp(snapshot);
+    }
 
-            for (RunningAbTestVariant variant : variations) {
-                acc += variant.getWeight();
-                if (acc > percentile) {
-                    selections.add(abTest.getId() + ":" + variant.getId());
-                    break;
-                }
+    /**
+     * Runs synthetic sessions through the same parsing, matching, variant selection and URI building as
+     * {@link AbTesting#appendAbTestsParameter(String, URI)}, without recording the assignments. The query parameters
+     * are built from examples of the filter patterns of each A/B test.
+     *
+     * @return The number of synthetic requests run
+     */
+    private int warmUp(AbTestsSnapshot snapshot) {
+        List<URI> uris = new ArrayList<>();
+        uris.add(WARM_UP_URI);
+        for (int testIndex = 0; testIndex < snapshot.getTestCount(); testIndex++) {
+            URI uri = WARM_UP_URI;
+            for (Map.Entry<String, List<String>> param : snapshot.getSampleParams(testIndex).entrySet()) {
+                uri = replaceQueryParam(uri, param.getKey(), param.getValue().get(0));
+            }
+            uris.add(uri);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmUpOptions.getTimeBudgetInMillis());
+        int iterations = 0;
+        while (iterations < warmUpOptions.getMaxIterations() && System.nanoTime() < deadline) {
+            URI uri = uris.get(iterations % uris.size());
+            String fhAbtests =
+                getAbTestsForSessionId("warm-up-" + iterations, snapshot, getQueryParamsFromURI(uri), false);
+            if (fhAbtests != null) {
+                replaceQueryParam(uri, FH_ABTESTS_PARAMETER, fhAbtests);
             }
+            iterations++;
         }
-        return String.join(";", selections);
+        log.debug("{} synthetic requests warmed up A/B tests snapshot generation {}.", iterations,
+            snapshot.getGeneration());
+        return iterations;
     }
 
     private Map<String, List<String>> getQueryParamsFromURI(URI uri) {
@@ -282,13 +397,59 @@ public class AbTesting {
         if (query == null) {
             return Collections.emptyMap();
         }
-        return Arrays.stream(query.split("&")).map(item -> {
+        return Arrays.stream(query.split("&")).filter(item -> !item.isEmpty()).map(item -> {
             int index = item.indexOf('=');
-            return new AbstractMap.SimpleEntry<>(item.substring(0, index), item.substring(index + 1));
+            // A parameter without a value, e.g. "?flag", has an empty value.
+            return index < 0 ?
+                new AbstractMap.SimpleEntry<>(item, "") :
+                new AbstractMap.SimpleEntry<>(item.substring(0, index), item.substring(index + 1));
         }).collect(
             Collectors.groupingBy(Map.Entry::getKey, Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
     }
 
+    /**
+     * Replaces a query parameter by splicing the raw query, so the URI is only parsed once, by {@link URI#create}.
+     */
+    private static URI replaceQueryParam(URI uri, String name, String value) {
+        String rawUri = uri.toString();
+        String rawQuery = uri.getRawQuery();
+        String rawFragment = uri.getRawFragment();
+
+        int queryEnd = rawFragment == null ? rawUri.length() : rawUri.length() - rawFragment.length() - 1;
+        int queryStart = rawQuery == null ? queryEnd : queryEnd - rawQuery.length() - 1;
+
+        StringBuilder builder = new StringBuilder(rawUri.length() + name.length() + value.length() + 2);
+        builder.append(rawUri, 0, queryStart).append('?');
+        if (rawQuery != null) {
+            for (String item : rawQuery.split("&")) {
+                int index = item.indexOf('=');
+                String itemName = index < 0 ? item : item.substring(0, index);
+                if (!item.isEmpty() && !itemName.equals(name)) {
+                    builder.append(item).append('&');
+                }
+            }
+        }
+        builder.append(name).append('=');
+        encodeQueryParamValue(value, builder);
+        if (rawFragment != null) {
+            builder.append('#').append(rawFragment);
+        }
+        return URI.create(builder.toString());
+    }
+
+    private static void encodeQueryParamValue(String value, StringBuilder builder) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "-._~!$'()*,;:@/?".indexOf(c) >= 0) {
+                builder.append(c);
+            } else {
+                builder.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+        }
+    }
+
     /**
      * The AbTesting builder
      */
@@ -337,25 +498,41 @@ public class AbTesting {
                     readTimeoutInSeconds = DEFAULT_READ_TIMEOUT_IN_SECONDS;
                 }
 
-                URI runningAbTestsUri = UriBuilder.fromUri(abTestsServerUrl).path(abTestsPath).build();
-
-                runningAbTestsFetcher =
-                    new BasicAuthenticationAbTestsFetcher(
-                        username,
-                        password,
-                        runningAbTestsUri,
-                        connectionTimeoutInSeconds,
-                        readTimeoutInSeconds);
-
+                URI runningAbTestsUri = buildRunningAbTestsUri(abTestsServerUrl, abTestsPath);
+
+                if (isJerseyAvailable()) {
+                    runningAbTestsFetcher =
+                        new BasicAuthenticationAbTestsFetcher(
+                            username,
+                            password,
+                            runningAbTestsUri,
+                            connectionTimeoutInSeconds,
+                            readTimeoutInSeconds);
+                } else {
+                    log.info("Jersey is not available. Using {} to fetch A/B tests.",
+                        HttpClientAbTestsFetcher.class.getSimpleName());
+                    runningAbTestsFetcher =
+                        new HttpClientAbTestsFetcher(
+                            username,
+                            password,
+                            runningAbTestsUri,
+                            connectionTimeoutInSeconds,
+                            readTimeoutInSeconds);
+                }
             }
 
             abTestsRetrievalScheduler =
                 new AbTestsRetrievalScheduler();
 
+            // Only the lease holder of a shared cache fetches from FHR A/B Tests Service.
+            RunningAbTestsFetcher fetcher = abTestsCache instanceof SharedAbTestsCache ?
+                ((SharedAbTestsCache) abTestsCache).wrap(
+                    runningAbTestsFetcher, cacheExpireTimeMinutes, TimeUnit.MINUTES) : runningAbTestsFetcher;
+
             return new AbTesting(
                 abTestsCache,
                 abTestsRetrievalScheduler,
-                runningAbTestsFetcher,
+                fetcher,
                 cacheExpireTimeMinutes,
                 abTestsServerUrl,
                 abTestsPath,
@@ -363,6 +540,12 @@ public class AbTesting {
                 null, // We do not store password as has already been consumed and to reduce exposure of it.
                 connectionTimeoutInSeconds,
                 readTimeoutInSeconds,
+                assignmentEventStream,
+                exposureCounters,
+                filterMatchingOptions,
+                warmUpOptions,
+                new AbTestsSnapshotManager(
+                    filterMatchingOptions == null ? FilterMatchingOptions.DEFAULT : filterMatchingOptions),
                 false);
         }
 
@@ -374,6 +557,31 @@ public class AbTesting {
             return this;
         }
 
+        private AbTestingBuilder abTestsSnapshotManager(AbTestsSnapshotManager abTestsSnapshotManager) {
+            return this;
+        }
+
+        private URI buildRunningAbTestsUri(String abTestsServerUrl, String abTestsPath) {
+            if (abTestsServerUrl.endsWith("/") && abTestsPath.startsWith("/")) {
+                return URI.create(abTestsServerUrl + abTestsPath.substring(1));
+            } else if (abTestsServerUrl.endsWith("/") || abTestsPath.startsWith("/")) {
+                return URI.create(abTestsServerUrl + abTestsPath);
+            }
+            return URI.create(abTestsServerUrl + "/" + abTestsPath);
+        }
+
+        private boolean isJerseyAvailable() {
+            for (String jerseyClassName : JERSEY_CLASS_NAMES) {
+                try {
+                    Class.forName(jerseyClassName, false, AbTesting.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    log.debug("{} is not available.", jerseyClassName);
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private Integer validateCacheExpireTimeMinutes(Integer cacheExpireTimeMinutes) {
             if (cacheExpireTimeMinutes == null) {
                 log.info("No cache expiry time specified for the A/B tests cache. Using default of {} minutes.",
@@ -0,0 +1,81 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.caching;
+
+import java.util.function.LongSupplier;
+
+/**
+ * An in-process implementation of {@link SharedSnapshotStore}, for nodes which share a JVM and for tests.
+ */
+public class InMemorySharedSnapshotStore implements SharedSnapshotStore {
+
+    private final LongSupplier clock;
+
+    private String leaseOwner;
+    private long leaseExpiresAt;
+    private long fencingToken;
+    private SharedSnapshot snapshot;
+
+    /**
+     * Constructs an {@link InMemorySharedSnapshotStore}.
+     */
+    public InMemorySharedSnapshotStore() {
+        this(System::currentTimeMillis);
+    }
+
+    InMemorySharedSnapshotStore(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public synchronized long tryAcquireLease(String owner, long leaseDurationInMillis) {
+        long now = clock.getAsLong();
+        if (!owner.equals(leaseOwner)) {
+            if (leaseOwner != null && now < leaseExpiresAt) {
+                return -1;
+            }
+            leaseOwner = owner;
+            fencingToken++;
+        }
+        leaseExpiresAt = now + leaseDurationInMillis;
+        return fencingToken;
+    }
+
+    public synchronized void releaseLease(String owner) {
+        if (owner.equals(leaseOwner)) {
+            leaseOwner = null;
+        }
+    }
+
+    public synchronized long getVersion() {
+        return snapshot == null ? 0 : snapshot.getVersion();
+    }
+
+    public synchronized SharedSnapshot read() {
+        return snapshot;
+    }
+
+    public synchronized long publish(long fencingToken, byte[] data) {
+        if (leaseOwner == null || fencingToken != this.fencingToken || clock.getAsLong() >= leaseExpiresAt) {
+            return -1;
+        }
+        snapshot = new SharedSnapshot(getVersion() + 1, data.clone());
+        return snapshot.getVersion();
+    }
+}
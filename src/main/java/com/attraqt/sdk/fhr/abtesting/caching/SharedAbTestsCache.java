@@ -0,0 +1,241 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+import com.attraqt.sdk.fhr.abtesting.retrieval.RunningAbTestsFetcher;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An {@link AbTestsCache} which lets a fleet of nodes share the A/B tests fetched by a single node, through a
+ * {@link SharedSnapshotStore}.
+ * <p>
+ * On every refresh each node tries to acquire or renew the lease of the store. Only the lease holder fetches the A/B
+ * tests from FHR A/B Tests Service, and it publishes them as a new version of the shared snapshot, gzipped JSON, when
+ * they have changed. The other nodes only compare the version of the shared snapshot with the one they hold, and read
+ * and decode it when it has changed. Until a snapshot has been published at all, the other nodes poll the store with
+ * a short backoff instead of fetching the A/B tests themselves, so that a new fleet does not hit FHR A/B Tests Service
+ * all at once.
+ * <p>
+ * The fetching is done by the {@link RunningAbTestsFetcher} returned by
+ * {@link SharedAbTestsCache#wrap(RunningAbTestsFetcher, long, TimeUnit)}, which
+ * {@link com.attraqt.sdk.fhr.abtesting.AbTesting} sets up with its refresh interval when it is given a
+ * {@link SharedAbTestsCache}. The A/B tests themselves are cached locally by another {@link AbTestsCache}.
+ */
+@Slf4j
+public class SharedAbTestsCache implements AbTestsCache {
+
+    public static final int DEFAULT_LEASE_DURATION_IN_REFRESH_INTERVALS = 2;
+    public static final long DEFAULT_FIRST_SNAPSHOT_WAIT_IN_SECONDS = 10;
+
+    private static final long INITIAL_BACKOFF_IN_MILLIS = 100;
+    private static final long MAX_BACKOFF_IN_MILLIS = 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<RunningAbTest>> RUNNING_AB_TESTS_TYPE = new TypeReference<>() {
+    };
+
+    private final SharedSnapshotStore store;
+    private final AbTestsCache localCache;
+    private final String nodeId;
+    private final Long leaseDurationInMillis;
+    private final long firstSnapshotWaitInMillis;
+
+    /**
+     * Returns whether this node held the lease of the store at its last refresh.
+     *
+     * @return true if this node fetches the A/B tests for the fleet
+     */
+    @Getter
+    private volatile boolean leaseHolder;
+    private long localVersion;
+    private byte[] localData;
+
+    /**
+     * Constructs a {@link SharedAbTestsCache}. Use {@link SharedAbTestsCache#builder()}.
+     *
+     * @param store                      The shared store. Required.
+     * @param localCache                 The cache of this node. Defaults to an {@link InMemoryAbTestsCache}.
+     * @param nodeId                     The id of this node in the fleet, which must be unique. Defaults to a random
+     *                                   UUID.
+     * @param leaseDurationInSeconds     The duration of the lease, which must be longer than the refresh interval so
+     *                                   that the lease holder renews it before it expires. Defaults to
+     *                                   {@value SharedAbTestsCache#DEFAULT_LEASE_DURATION_IN_REFRESH_INTERVALS}
+     *                                   refresh intervals.
+     * @param firstSnapshotWaitInSeconds How long a node which does not hold the lease waits for the first snapshot to
+     *                                   be published before its refresh fails and is retried. Defaults to
+     *                                   {@value SharedAbTestsCache#DEFAULT_FIRST_SNAPSHOT_WAIT_IN_SECONDS}.
+     */
+    @Builder
+    private SharedAbTestsCache(SharedSnapshotStore store,
+                               AbTestsCache localCache,
+                               String nodeId,
+                               Long leaseDurationInSeconds,
+                               Long firstSnapshotWaitInSeconds) {
+        if (store == null) {
+            throw new IllegalArgumentException("store required by SharedAbTestsCacheBuilder is not provided.");
+        }
+
+        this.store = store;
+        this.localCache = localCache == null ? new InMemoryAbTestsCache() : localCache;
+        this.nodeId = nodeId == null ? UUID.randomUUID().toString() : nodeId;
+        this.leaseDurationInMillis =
+            leaseDurationInSeconds == null ? null : TimeUnit.SECONDS.toMillis(leaseDurationInSeconds);
+        this.firstSnapshotWaitInMillis = TimeUnit.SECONDS.toMillis(
+            firstSnapshotWaitInSeconds == null ? DEFAULT_FIRST_SNAPSHOT_WAIT_IN_SECONDS : firstSnapshotWaitInSeconds);
+    }
+
+    public void cacheAbTests(List<RunningAbTest> abTests) {
+        localCache.cacheAbTests(abTests);
+    }
+
+    public List<RunningAbTest> getAbTests() {
+        return localCache.getAbTests();
+    }
+
+    /**
+     * Returns a {@link RunningAbTestsFetcher} which only calls upstream if this node holds the lease, and otherwise
+     * returns the A/B tests of the shared snapshot.
+     *
+     * @param upstream        The fetcher of the A/B tests from FHR A/B Tests Service
+     * @param refreshInterval The interval at which the returned fetcher is called
+     * @param timeUnit        The unit of refreshInterval
+     * @return A {@link RunningAbTestsFetcher}
+     * @throws IllegalArgumentException if the configured lease duration is not longer than the refresh interval
+     */
+    public RunningAbTestsFetcher wrap(RunningAbTestsFetcher upstream, long refreshInterval, TimeUnit timeUnit) {
+        long refreshIntervalInMillis = timeUnit.toMillis(refreshInterval);
+        if (leaseDurationInMillis != null && leaseDurationInMillis <= refreshIntervalInMillis) {
+            throw new IllegalArgumentException(String.format(
+                "The lease duration of %d seconds must be longer than the refresh interval of %d seconds.",
+                TimeUnit.MILLISECONDS.toSeconds(leaseDurationInMillis),
+                TimeUnit.MILLISECONDS.toSeconds(refreshIntervalInMillis)));
+        }
+
+        long leaseDuration = leaseDurationInMillis != null ?
+            leaseDurationInMillis : DEFAULT_LEASE_DURATION_IN_REFRESH_INTERVALS * refreshIntervalInMillis;
+        return () -> fetch(upstream, leaseDuration);
+    }
+
+    /**
+     * Releases the lease if this node holds it, so that another node takes over at its next refresh.
+     */
+    public void releaseLease() {
+        store.releaseLease(nodeId);
+        leaseHolder = false;
+    }
+
+    private synchronized List<RunningAbTest> fetch(RunningAbTestsFetcher upstream, long leaseDuration) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(firstSnapshotWaitInMillis);
+        long backoffInMillis = INITIAL_BACKOFF_IN_MILLIS;
+        while (true) {
+            long fencingToken = store.tryAcquireLease(nodeId, leaseDuration);
+            leaseHolder = fencingToken >= 0;
+            if (leaseHolder) {
+                return fetchAndPublish(upstream, fencingToken);
+            }
+
+            long version = store.getVersion();
+            if (version != 0) {
+                return read(version);
+            }
+
+            long remainingInMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingInMillis <= 0) {
+                throw new IllegalStateException("No shared A/B tests snapshot has been published yet.");
+            }
+            log.debug("No shared A/B tests snapshot has been published yet. Retrying in {} ms.", backoffInMillis);
+            try {
+                Thread.sleep(Math.min(backoffInMillis, remainingInMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the shared A/B tests snapshot.", e);
+            }
+            backoffInMillis = Math.min(2 * backoffInMillis, MAX_BACKOFF_IN_MILLIS);
+        }
+    }
+
+    private List<RunningAbTest> read(long version) {
+        List<RunningAbTest> abTests = localCache.getAbTests();
+        if (version != localVersion || abTests == null) {
+            SharedSnapshot snapshot = store.read();
+            abTests = decode(snapshot.getData());
+            localVersion = snapshot.getVersion();
+            localData = snapshot.getData();
+            log.info("Shared A/B tests snapshot version {} is read.", localVersion);
+        }
+        return abTests;
+    }
+
+    private List<RunningAbTest> fetchAndPublish(RunningAbTestsFetcher upstream, long fencingToken) {
+        List<RunningAbTest> abTests = upstream.getRunningAbTests();
+        byte[] data = encode(abTests);
+        if (localVersion == store.getVersion() && Arrays.equals(data, localData)) {
+            return abTests;
+        }
+
+        long version = store.publish(fencingToken, data);
+        if (version < 0) {
+            leaseHolder = false;
+            log.warn("The lease of the shared A/B tests snapshot was lost. The A/B tests are not published.");
+        } else {
+            localVersion = version;
+            localData = data;
+            log.info("Shared A/B tests snapshot version {} is published.", version);
+        }
+        return abTests;
+    }
+
+    private static byte[] encode(List<RunningAbTest> abTests) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            OBJECT_MAPPER.writeValue(out, abTests);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<RunningAbTest> decode(byte[] data) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return OBJECT_MAPPER.readValue(in, RUNNING_AB_TESTS_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.caching;
+
+import lombok.Value;
+
+/**
+ * A versioned, encoded snapshot of the A/B tests, as stored in a {@link SharedSnapshotStore}.
+ */
+@Value
+public class SharedSnapshot {
+
+    long version;
+    byte[] data;
+}
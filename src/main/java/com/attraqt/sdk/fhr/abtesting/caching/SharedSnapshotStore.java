@@ -0,0 +1,71 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.caching;
+
+/**
+ * A key-value store shared by a fleet of nodes, used by {@link SharedAbTestsCache} to elect a single node which fetches
+ * the A/B tests, and to share the A/B tests it fetched with the other nodes.
+ * <p>
+ * Implementations hold a single lease and a single versioned snapshot. Every change of lease owner must produce a
+ * greater fencing token, and a snapshot must only be published with the token of the current, unexpired lease, so
+ * that a node which lost its lease cannot overwrite the snapshot of the new lease owner.
+ */
+public interface SharedSnapshotStore {
+
+    /**
+     * Acquires the lease for owner if it is free or expired, or renews it if owner already holds it.
+     *
+     * @param owner                 The id of the node
+     * @param leaseDurationInMillis The duration of the lease from now
+     * @return The fencing token of the lease, or -1 if another node holds the lease.
+     */
+    long tryAcquireLease(String owner, long leaseDurationInMillis);
+
+    /**
+     * Releases the lease if owner holds it, so that another node can take it over without waiting for it to expire.
+     *
+     * @param owner The id of the node
+     */
+    void releaseLease(String owner);
+
+    /**
+     * Returns the version of the published snapshot. It is called on every refresh by every node which does not hold
+     * the lease, so it should be cheap.
+     *
+     * @return The version, or 0 if nothing has been published yet.
+     */
+    long getVersion();
+
+    /**
+     * Returns the published snapshot.
+     *
+     * @return A {@link SharedSnapshot}, or null if nothing has been published yet.
+     */
+    SharedSnapshot read();
+
+    /**
+     * Publishes a snapshot if fencingToken is the token of the current, unexpired lease.
+     *
+     * @param fencingToken The fencing token returned by {@link SharedSnapshotStore#tryAcquireLease(String, long)}
+     * @param data         The encoded snapshot
+     * @return The version of the published snapshot, or -1 if the lease has been lost.
+     */
+    long publish(long fencingToken, byte[] data);
+}
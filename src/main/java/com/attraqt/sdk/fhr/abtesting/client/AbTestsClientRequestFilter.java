@@ -0,0 +1,77 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.client;
+
+import java.net.URI;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+
+import com.attraqt.sdk.fhr.abtesting.AbTesting;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A {@link ClientRequestFilter} which appends the fh_abtests parameter to outgoing FAS requests.
+ * <p>
+ * The session id is read from a request property, by default
+ * {@value AbTestsClientRequestFilter#DEFAULT_SESSION_ID_PROPERTY}, and the request URI is updated once, in place,
+ * from the current A/B tests. Requests without the property are left untouched. For example:
+ * <pre>{@code
+ * Client client = ClientBuilder.newClient().register(new AbTestsClientRequestFilter(abTesting));
+ *
+ * client.target(fasUri)
+ *     .request(MediaType.APPLICATION_JSON)
+ *     .property(AbTestsClientRequestFilter.DEFAULT_SESSION_ID_PROPERTY, sessionId)
+ *     .get();
+ * }</pre>
+ */
+@RequiredArgsConstructor
+public class AbTestsClientRequestFilter implements ClientRequestFilter {
+
+    public static final String DEFAULT_SESSION_ID_PROPERTY = "com.attraqt.sdk.fhr.abtesting.sessionId";
+
+    private final AbTesting abTesting;
+    private final String sessionIdProperty;
+
+    /**
+     * Constructs an {@link AbTestsClientRequestFilter} which reads the session id from the
+     * {@value AbTestsClientRequestFilter#DEFAULT_SESSION_ID_PROPERTY} request property.
+     *
+     * @param abTesting A started {@link AbTesting}
+     */
+    public AbTestsClientRequestFilter(AbTesting abTesting) {
+        this(abTesting, DEFAULT_SESSION_ID_PROPERTY);
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        Object sessionId = requestContext.getProperty(sessionIdProperty);
+        if (sessionId == null) {
+            return;
+        }
+
+        URI uri = requestContext.getUri();
+        URI abTestsUri = abTesting.appendAbTestsParameter(sessionId.toString(), uri);
+        if (abTestsUri != uri) {
+            requestContext.setUri(abTestsUri);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.events;
+
+import lombok.Value;
+
+/**
+ * A single variant assignment, as delivered to an {@link AssignmentEventConsumer}.
+ */
+@Value
+public class AssignmentEvent {
+
+    /**
+     * Returns a hash of the session id the assignment was made for. The raw session id is not retained.
+     *
+     * @return The session id hash.
+     */
+    int sessionHash;
+    /**
+     * Returns the id of the A/B test.
+     *
+     * @return The id of the A/B test.
+     */
+    String testId;
+    /**
+     * Returns the id of the variant the session was assigned to.
+     *
+     * @return The id of the variant.
+     */
+    String variantId;
+    /**
+     * Returns the position of the A/B test in the A/B tests snapshot the assignment was made from.
+     *
+     * @return The position of the A/B test.
+     */
+    int testIndex;
+    /**
+     * Returns the position of the variant within the variations of its A/B test.
+     *
+     * @return The position of the variant.
+     */
+    int variantIndex;
+    /**
+     * Returns the time of the assignment in milliseconds since the epoch.
+     *
+     * @return The assignment timestamp.
+     */
+    long timestamp;
+}
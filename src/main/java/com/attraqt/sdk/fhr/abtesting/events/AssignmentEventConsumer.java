@@ -0,0 +1,38 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.events;
+
+import java.util.List;
+
+/**
+ * An interface to receive the assignment events recorded by an {@link AssignmentEventStream}.
+ * <p>
+ * It is always called from the single background thread of the stream, never from a request thread, so
+ * implementations may block or do I/O.
+ */
+public interface AssignmentEventConsumer {
+
+    /**
+     * Consumes a batch of assignment events, oldest first.
+     *
+     * @param events The drained events. The list must not be retained after the call returns.
+     */
+    void consume(List<AssignmentEvent> events);
+}
@@ -0,0 +1,255 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshot;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An opt-in stream of variant assignments, used for exposure analysis.
+ * <p>
+ * Request threads publish fixed size records into a preallocated lock-free ring buffer, which never blocks and never
+ * allocates. A single background thread drains the buffer in batches and hands them to an
+ * {@link AssignmentEventConsumer}. If the consumer cannot keep up the buffer fills and new events are dropped and
+ * counted, rather than slowing the request threads down.
+ * <p>
+ * Sampling is decided per session, so a sampled session has all of its assignments recorded.
+ */
+@Slf4j
+public class AssignmentEventStream {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_DRAIN_INTERVAL_IN_MILLIS = 100;
+    public static final double DEFAULT_SAMPLING_RATE = 1.0;
+
+    private final AssignmentRingBuffer ringBuffer;
+    private final AssignmentEventConsumer consumer;
+    private final int batchSize;
+    private final long drainIntervalInMillis;
+    private final long samplingThreshold;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder consumerFailureCount = new LongAdder();
+
+    private final List<AssignmentEvent> batch;
+    private final AssignmentRingBuffer.RecordVisitor batchAppender = this::addToBatch;
+    private ScheduledExecutorService ses;
+
+    /**
+     * Constructs an {@link AssignmentEventStream}. Use {@link AssignmentEventStream#builder()}.
+     *
+     * @param consumer              The consumer of the drained events. Required.
+     * @param capacity              The ring buffer capacity, a power of two. Defaults to
+     *                              {@value AssignmentEventStream#DEFAULT_CAPACITY}.
+     * @param batchSize             The maximum number of events per {@link AssignmentEventConsumer#consume} call.
+     *                              Defaults to {@value AssignmentEventStream#DEFAULT_BATCH_SIZE}.
+     * @param drainIntervalInMillis The delay between drains of the ring buffer. Defaults to
+     *                              {@value AssignmentEventStream#DEFAULT_DRAIN_INTERVAL_IN_MILLIS}.
+     * @param samplingRate          The fraction of sessions, between 0 and 1, whose assignments are recorded. Defaults
+     *                              to {@value AssignmentEventStream#DEFAULT_SAMPLING_RATE}.
+     */
+    @Builder
+    private AssignmentEventStream(AssignmentEventConsumer consumer,
+                                  Integer capacity,
+                                  Integer batchSize,
+                                  Long drainIntervalInMillis,
+                                  Double samplingRate) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer required by AssignmentEventStreamBuilder is not provided.");
+        }
+        if (samplingRate != null && (samplingRate < 0 || samplingRate > 1)) {
+            throw new IllegalArgumentException("samplingRate must be between 0 and 1.");
+        }
+        if (batchSize != null && batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1.");
+        }
+        if (drainIntervalInMillis != null && drainIntervalInMillis <= 0) {
+            throw new IllegalArgumentException("drainIntervalInMillis must be positive.");
+        }
+
+        this.consumer = consumer;
+        this.ringBuffer = new AssignmentRingBuffer(capacity == null ? DEFAULT_CAPACITY : capacity);
+        this.batchSize = batchSize == null ? DEFAULT_BATCH_SIZE : batchSize;
+        this.drainIntervalInMillis = drainIntervalInMillis == null ? DEFAULT_DRAIN_INTERVAL_IN_MILLIS :
+            drainIntervalInMillis;
+        this.samplingThreshold =
+            (long) ((samplingRate == null ? DEFAULT_SAMPLING_RATE : samplingRate) * 0x1_0000_0000L);
+        this.batch = new ArrayList<>(this.batchSize);
+    }
+
+    /**
+     * Computes the session hash recorded in the events, and used for sampling, for a session id. A null session id is
+     * hashed as "null", as in variant selection.
+     *
+     * @param sessionId The sessionId
+     * @return The session hash
+     */
+    public static int hashSessionId(String sessionId) {
+        // Finalization step of murmur3 over the cached String hash code, to spread it for sampling.
+        int hash = String.valueOf(sessionId).hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Returns whether the assignments of the session with the given hash are recorded.
+     *
+     * @param sessionHash The hash returned by {@link AssignmentEventStream#hashSessionId(String)}
+     * @return true if the session is sampled
+     */
+    public boolean isSampled(int sessionHash) {
+        return Integer.toUnsignedLong(sessionHash) < samplingThreshold;
+    }
+
+    /**
+     * Records an assignment. Never blocks; if the ring buffer is full the event is dropped.
+     *
+     * @param sessionHash  The hash returned by {@link AssignmentEventStream#hashSessionId(String)}
+     * @param snapshot     The snapshot the assignment was made from
+     * @param testIndex    The position of the A/B test in the snapshot
+     * @param variantIndex The position of the variant in the variations of the A/B test
+     */
+    public void publish(int sessionHash, AbTestsSnapshot snapshot, int testIndex, int variantIndex) {
+        if (!isSampled(sessionHash)) {
+            sampledOutCount.increment();
+        } else if (ringBuffer.offer(sessionHash, snapshot, testIndex, variantIndex, System.currentTimeMillis())) {
+            publishedCount.increment();
+        } else {
+            droppedCount.increment();
+        }
+    }
+
+    /**
+     * Returns the number of events accepted into the ring buffer.
+     *
+     * @return The published events count
+     */
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    /**
+     * Returns the number of sampled events which were dropped because the ring buffer was full.
+     *
+     * @return The dropped events count
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of events which were not recorded because their session was not sampled.
+     *
+     * @return The sampled out events count
+     */
+    public long getSampledOutCount() {
+        return sampledOutCount.sum();
+    }
+
+    /**
+     * Returns the number of batches for which the consumer threw an exception. Those events are lost.
+     *
+     * @return The failed batches count
+     */
+    public long getConsumerFailureCount() {
+        return consumerFailureCount.sum();
+    }
+
+    /**
+     * Starts the background thread which drains the ring buffer into the consumer.
+     */
+    public synchronized void start() {
+        if (ses != null) {
+            return;
+        }
+        ses = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ab-tests-assignment-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ses.scheduleWithFixedDelay(this::drain, drainIntervalInMillis, drainIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread after a final drain of the ring buffer.
+     */
+    public synchronized void shutdown() {
+        if (ses == null) {
+            return;
+        }
+        ses.shutdown();
+        try {
+            ses.awaitTermination(drainIntervalInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ses = null;
+        drain();
+    }
+
+    private void drain() {
+        synchronized (batch) {
+            boolean more = true;
+            while (more) {
+                while (batch.size() < batchSize && ringBuffer.poll(batchAppender)) {
+                    // Keep polling until the batch is full or the buffer is empty.
+                }
+                more = batch.size() == batchSize;
+
+                if (!batch.isEmpty()) {
+                    try {
+                        consumer.consume(batch);
+                    } catch (Exception e) {
+                        consumerFailureCount.increment();
+                        log.warn("Assignment event consumer failed. {} events are lost.", batch.size(), e);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void addToBatch(int sessionHash, Object source, int testIndex, int variantIndex, long timestamp) {
+        AbTestsSnapshot snapshot = (AbTestsSnapshot) source;
+        batch.add(new AssignmentEvent(
+            sessionHash,
+            snapshot.getTestId(testIndex),
+            snapshot.getVariantId(testIndex, variantIndex),
+            testIndex,
+            variantIndex,
+            timestamp));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring buffer of assignment records.
+ * <p>
+ * Records are stored in preallocated parallel arrays, so publishing does not allocate. Each slot carries a sequence
+ * number which tells producers whether the slot is free and the consumer whether it has been filled. When the buffer
+ * is full the record is rejected rather than blocking the producer.
+ */
+final class AssignmentRingBuffer {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final int[] sessionHashes;
+    private final int[] testIndexes;
+    private final int[] variantIndexes;
+    private final long[] timestamps;
+    private final Object[] sources;
+
+    AssignmentRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two greater than one.");
+        }
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        sessionHashes = new int[capacity];
+        testIndexes = new int[capacity];
+        variantIndexes = new int[capacity];
+        timestamps = new long[capacity];
+        sources = new Object[capacity];
+    }
+
+    /**
+     * Claims a slot and writes the record into it. Safe to call from any number of threads.
+     *
+     * @return false if the buffer is full and the record has been dropped
+     */
+    boolean offer(int sessionHash, Object source, int testIndex, int variantIndex, long timestamp) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequences.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+
+        sessionHashes[slot] = sessionHash;
+        testIndexes[slot] = testIndex;
+        variantIndexes[slot] = variantIndex;
+        timestamps[slot] = timestamp;
+        sources[slot] = source;
+        sequences.setRelease(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Reads the oldest record, if any, into the given visitor and frees its slot. Must only be called from a single
+     * consumer thread.
+     *
+     * @return false if there is no complete record to read
+     */
+    boolean poll(RecordVisitor visitor) {
+        int slot = (int) head & mask;
+        if (sequences.getAcquire(slot) != head + 1) {
+            return false;
+        }
+
+        visitor.visit(sessionHashes[slot], sources[slot], testIndexes[slot], variantIndexes[slot], timestamps[slot]);
+        sources[slot] = null;
+        sequences.setRelease(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    interface RecordVisitor {
+
+        void visit(int sessionHash, Object source, int testIndex, int variantIndex, long timestamp);
+    }
+}
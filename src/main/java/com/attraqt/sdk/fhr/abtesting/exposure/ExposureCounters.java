@@ -0,0 +1,250 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.exposure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.attraqt.sdk.fhr.abtesting.exposure.ExposureSnapshot.TestExposure;
+import com.attraqt.sdk.fhr.abtesting.exposure.ExposureSnapshot.VariantExposure;
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshot;
+
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the variant assignments of every cached A/B test, so that live traffic splits can be checked against the
+ * configured weights without per-request I/O.
+ * <p>
+ * The counters of a generation are striped {@link LongAdder} cells laid out by the positions of the A/B tests and
+ * their variations in the {@link AbTestsSnapshot}, so counting is a plain array lookup. A new generation is started
+ * whenever the snapshot generation changes. The counters of unchanged A/B tests are carried over; those of changed or
+ * removed A/B tests are queued and handed to the exporter one last time at the next export, so that the assignments
+ * which still reach them from the previous generation are included.
+ */
+@Slf4j
+public class ExposureCounters {
+
+    public static final long DEFAULT_EXPORT_INTERVAL_IN_SECONDS = 60;
+
+    private final ExposureExporter exporter;
+    private final long exportIntervalInSeconds;
+
+    private volatile Generation current = new Generation();
+    private volatile Generation previous = current;
+    private final Queue<RetiredCells> retired = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService ses;
+
+    /**
+     * Constructs an {@link ExposureCounters}. Use {@link ExposureCounters#builder()}.
+     *
+     * @param exporter                The exporter to hand snapshots to periodically. If it is not provided, snapshots
+     *                                are only available through {@link ExposureCounters#snapshot()}.
+     * @param exportIntervalInSeconds The interval between exports. Defaults to
+     *                                {@value ExposureCounters#DEFAULT_EXPORT_INTERVAL_IN_SECONDS}.
+     */
+    @Builder
+    private ExposureCounters(ExposureExporter exporter, Long exportIntervalInSeconds) {
+        if (exportIntervalInSeconds != null && exportIntervalInSeconds <= 0) {
+            throw new IllegalArgumentException("exportIntervalInSeconds must be positive.");
+        }
+
+        this.exporter = exporter;
+        this.exportIntervalInSeconds =
+            exportIntervalInSeconds == null ? DEFAULT_EXPORT_INTERVAL_IN_SECONDS : exportIntervalInSeconds;
+    }
+
+    /**
+     * Counts an assignment.
+     *
+     * @param snapshot     The snapshot the assignment was made from
+     * @param testIndex    The position of the A/B test in the snapshot
+     * @param variantIndex The position of the variant in the variations of the A/B test
+     */
+    public void record(AbTestsSnapshot snapshot, int testIndex, int variantIndex) {
+        Generation generation = current;
+        if (generation.number != snapshot.getGeneration()) {
+            generation = resolve(snapshot);
+            if (generation == null) {
+                return;
+            }
+        }
+        generation.tests[testIndex].cells[variantIndex].increment();
+    }
+
+    /**
+     * Takes a snapshot of the counters of the current generation. Counting continues while the snapshot is taken, so
+     * it is not an atomic view across cells.
+     *
+     * @return An {@link ExposureSnapshot}
+     */
+    public ExposureSnapshot snapshot() {
+        Generation generation = current;
+        return snapshot(generation.startedAt, List.of(generation.tests), false);
+    }
+
+    /**
+     * Starts exporting snapshots periodically. Does nothing if no exporter is provided.
+     */
+    public synchronized void start() {
+        if (exporter == null || ses != null) {
+            return;
+        }
+        ses = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ab-tests-exposure-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ses.scheduleAtFixedRate(this::export, exportIntervalInSeconds, exportIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops exporting snapshots.
+     */
+    public synchronized void shutdown() {
+        if (ses != null) {
+            ses.shutdown();
+            ses = null;
+        }
+    }
+
+    private synchronized Generation resolve(AbTestsSnapshot snapshot) {
+        if (current.number == snapshot.getGeneration()) {
+            return current;
+        }
+        // Requests which read the cache just before it was updated are still counted in the generation they used.
+        if (previous.number == snapshot.getGeneration()) {
+            return previous;
+        }
+        if (snapshot.getGeneration() < current.number) {
+            return null;
+        }
+
+        Map<Long, TestCells> carriedOver = new HashMap<>();
+        for (TestCells testCells : current.tests) {
+            carriedOver.put(testCells.testStamp, testCells);
+        }
+
+        Generation generation = new Generation(snapshot, carriedOver);
+        if (exporter != null && !carriedOver.isEmpty()) {
+            retired.add(new RetiredCells(current.startedAt, new ArrayList<>(carriedOver.values())));
+        }
+        previous = current;
+        current = generation;
+        return generation;
+    }
+
+    private void export() {
+        try {
+            RetiredCells retiredCells;
+            while ((retiredCells = retired.poll()) != null) {
+                exporter.export(snapshot(retiredCells.startedAt, retiredCells.tests, true));
+            }
+            exporter.export(snapshot());
+        } catch (Exception e) {
+            log.warn("Exporting the A/B tests exposure counters failed.", e);
+        }
+    }
+
+    private static ExposureSnapshot snapshot(long startedAt, Collection<TestCells> tests, boolean rolledOver) {
+        List<TestExposure> testExposures = new ArrayList<>(tests.size());
+        for (TestCells testCells : tests) {
+            List<VariantExposure> variants = new ArrayList<>(testCells.cells.length);
+            for (int i = 0; i < testCells.cells.length; i++) {
+                variants.add(
+                    new VariantExposure(testCells.variantIds[i], testCells.variantWeights[i], testCells.cells[i].sum()));
+            }
+            testExposures.add(new TestExposure(testCells.testId, testCells.startedAt, variants));
+        }
+        return new ExposureSnapshot(startedAt, System.currentTimeMillis(), rolledOver, testExposures);
+    }
+
+    private static final class Generation {
+
+        private final long number;
+        private final long startedAt = System.currentTimeMillis();
+        private final TestCells[] tests;
+
+        private Generation() {
+            this.number = 0;
+            this.tests = new TestCells[0];
+        }
+
+        /**
+         * Builds the next generation, taking the counters of the unchanged A/B tests out of carriedOver.
+         */
+        private Generation(AbTestsSnapshot snapshot, Map<Long, TestCells> carriedOver) {
+            this.number = snapshot.getGeneration();
+            this.tests = new TestCells[snapshot.getTestCount()];
+            for (int i = 0; i < tests.length; i++) {
+                TestCells testCells = carriedOver.remove(snapshot.getTestStamp(i));
+                tests[i] = testCells == null ? new TestCells(snapshot, i) : testCells;
+            }
+        }
+    }
+
+    /**
+     * The counters of the A/B tests which changed or were removed when a generation was replaced.
+     */
+    private static final class RetiredCells {
+
+        private final long startedAt;
+        private final List<TestCells> tests;
+
+        private RetiredCells(long startedAt, List<TestCells> tests) {
+            this.startedAt = startedAt;
+            this.tests = tests;
+        }
+    }
+
+    private static final class TestCells {
+
+        private final long testStamp;
+        private final String testId;
+        private final long startedAt = System.currentTimeMillis();
+        private final String[] variantIds;
+        private final int[] variantWeights;
+        private final LongAdder[] cells;
+
+        private TestCells(AbTestsSnapshot snapshot, int testIndex) {
+            this.testStamp = snapshot.getTestStamp(testIndex);
+            this.testId = snapshot.getTestId(testIndex);
+
+            int variationCount = snapshot.getVariationCount(testIndex);
+            this.variantIds = new String[variationCount];
+            this.variantWeights = new int[variationCount];
+            this.cells = new LongAdder[variationCount];
+            for (int i = 0; i < variationCount; i++) {
+                variantIds[i] = snapshot.getVariantId(testIndex, i);
+                variantWeights[i] = snapshot.getVariantWeight(testIndex, i);
+                cells[i] = new LongAdder();
+            }
+        }
+    }
+}
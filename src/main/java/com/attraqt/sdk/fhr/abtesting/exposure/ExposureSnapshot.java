@@ -0,0 +1,144 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.exposure;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * A point in time copy of the exposure counters of one generation of the cached A/B tests.
+ */
+@Value
+public class ExposureSnapshot {
+
+    /**
+     * Returns the time at which counting started for this generation, in milliseconds since the epoch. The counting
+     * of A/B tests carried over from a previous generation may have started earlier.
+     *
+     * @return The start time.
+     */
+    long startedAt;
+    /**
+     * Returns the time at which the snapshot was taken, in milliseconds since the epoch.
+     *
+     * @return The snapshot time.
+     */
+    long takenAt;
+    /**
+     * Returns whether the generation has been replaced by a newer one, in which case it only contains the A/B tests
+     * which were changed or removed, and their counts are final.
+     *
+     * @return true if the counts are final.
+     */
+    boolean rolledOver;
+    /**
+     * Returns the exposures of every A/B test of the generation.
+     *
+     * @return A list of {@link TestExposure}
+     */
+    List<TestExposure> tests;
+
+    @Value
+    public static class TestExposure {
+
+        /**
+         * Returns the id of the A/B test.
+         *
+         * @return The id of the A/B test.
+         */
+        String testId;
+        /**
+         * Returns the time at which counting started for the A/B test, in milliseconds since the epoch.
+         *
+         * @return The start time.
+         */
+        long startedAt;
+        /**
+         * Returns the exposures of every variant of the A/B test.
+         *
+         * @return A list of {@link VariantExposure}
+         */
+        List<VariantExposure> variants;
+
+        /**
+         * Returns the number of assignments to any variant of the A/B test.
+         *
+         * @return The total assignments count.
+         */
+        public long getTotalCount() {
+            long total = 0;
+            for (VariantExposure variant : variants) {
+                total += variant.getCount();
+            }
+            return total;
+        }
+
+        /**
+         * Returns Pearson's chi-squared statistic of the observed counts against the counts expected from the
+         * configured weights. Large values indicate a sample ratio mismatch.
+         *
+         * @return The chi-squared statistic, 0 if nothing has been counted yet.
+         */
+        public double getChiSquared() {
+            long total = getTotalCount();
+            long totalWeight = 0;
+            for (VariantExposure variant : variants) {
+                totalWeight += variant.getWeight();
+            }
+            if (total == 0 || totalWeight == 0) {
+                return 0;
+            }
+
+            double chiSquared = 0;
+            for (VariantExposure variant : variants) {
+                double expected = (double) total * variant.getWeight() / totalWeight;
+                if (expected > 0) {
+                    double difference = variant.getCount() - expected;
+                    chiSquared += difference * difference / expected;
+                }
+            }
+            return chiSquared;
+        }
+    }
+
+    @Value
+    public static class VariantExposure {
+
+        /**
+         * Returns the id of the variant.
+         *
+         * @return The id of the variant.
+         */
+        String variantId;
+        /**
+         * Returns the configured weight of the variant.
+         *
+         * @return The weight.
+         */
+        int weight;
+        /**
+         * Returns the number of assignments to the variant.
+         *
+         * @return The assignments count.
+         */
+        long count;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A filter pattern the linear-time matcher does not support, matched by {@link Pattern}.
+ * <p>
+ * {@link Pattern} backtracks, so a match can take exponential time. When
+ * {@link FilterMatchingOptions#getMaxMatchSteps()} is set, the characters read from the value are counted and the
+ * match is abandoned once they exceed it.
+ */
+@Slf4j
+final class BacktrackingFilterPattern extends FilterPattern {
+
+    private final Pattern compiledPattern;
+    private final long maxMatchSteps;
+
+    BacktrackingFilterPattern(Pattern compiledPattern, FilterMatchingOptions options) {
+        super(compiledPattern.pattern(), options);
+        this.compiledPattern = compiledPattern;
+        this.maxMatchSteps = options.getMaxMatchSteps();
+    }
+
+    @Override
+    public boolean isLinear() {
+        return false;
+    }
+
+    @Override
+    boolean matchesWithinBudget(String value) {
+        if (maxMatchSteps == 0) {
+            return compiledPattern.matcher(value).matches();
+        }
+        try {
+            return compiledPattern.matcher(new BudgetedCharSequence(value, maxMatchSteps)).matches();
+        } catch (BudgetExceededException e) {
+            log.debug("Matching filter pattern {} exceeded the maximum of {} steps.", getPattern(), maxMatchSteps);
+            return false;
+        }
+    }
+
+    /**
+     * A view of the value which counts the characters read from it.
+     */
+    private static final class BudgetedCharSequence implements CharSequence {
+
+        private final String value;
+        private long remainingSteps;
+
+        private BudgetedCharSequence(String value, long maxSteps) {
+            this.value = value;
+            this.remainingSteps = maxSteps;
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remainingSteps < 0) {
+                throw BudgetExceededException.INSTANCE;
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return value.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final class BudgetExceededException extends RuntimeException {
+
+        private static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("Maximum match steps exceeded.", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable set of code points, stored as sorted, disjoint, inclusive ranges with a bitmap for ASCII.
+ */
+final class CodePointSet {
+
+    static final CodePointSet DIGIT = of(range('0', '9'));
+    static final CodePointSet WORD = of(range('a', 'z'), range('A', 'Z'), range('_', '_'), range('0', '9'));
+    static final CodePointSet SPACE = of(range(' ', ' '), range('\t', '\r'));
+    static final CodePointSet LINE_TERMINATOR =
+        of(range('\n', '\n'), range('\r', '\r'), range(0x85, 0x85), range(0x2028, 0x2029));
+
+    private final int[] ranges;
+    private final long asciiLow;
+    private final long asciiHigh;
+
+    private CodePointSet(int[] ranges) {
+        this.ranges = ranges;
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < ranges.length && ranges[i] < 128; i += 2) {
+            for (int codePoint = ranges[i]; codePoint <= Math.min(ranges[i + 1], 127); codePoint++) {
+                if (codePoint < 64) {
+                    low |= 1L << codePoint;
+                } else {
+                    high |= 1L << (codePoint - 64);
+                }
+            }
+        }
+        this.asciiLow = low;
+        this.asciiHigh = high;
+    }
+
+    static int[] range(int from, int to) {
+        return new int[] {from, to};
+    }
+
+    static CodePointSet of(int[]... ranges) {
+        return union(Arrays.asList(ranges));
+    }
+
+    /**
+     * Builds the set of the code points in any of the given ranges.
+     */
+    static CodePointSet union(List<int[]> ranges) {
+        List<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingInt(range -> range[0]));
+
+        List<Integer> merged = new ArrayList<>();
+        for (int[] range : sorted) {
+            int last = merged.size() - 1;
+            if (last > 0 && range[0] <= merged.get(last) + 1) {
+                merged.set(last, Math.max(merged.get(last), range[1]));
+            } else {
+                merged.add(range[0]);
+                merged.add(range[1]);
+            }
+        }
+        return new CodePointSet(merged.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Returns the ranges of the set, to be combined with other ranges.
+     */
+    List<int[]> ranges() {
+        List<int[]> result = new ArrayList<>(ranges.length / 2);
+        for (int i = 0; i < ranges.length; i += 2) {
+            result.add(range(ranges[i], ranges[i + 1]));
+        }
+        return result;
+    }
+
+    CodePointSet complement() {
+        List<int[]> result = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.add(range(next, ranges[i] - 1));
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_CODE_POINT) {
+            result.add(range(next, Character.MAX_CODE_POINT));
+        }
+        return union(result);
+    }
+
+    boolean contains(int codePoint) {
+        if (codePoint < 64) {
+            return (asciiLow & (1L << codePoint)) != 0;
+        }
+        if (codePoint < 128) {
+            return (asciiHigh & (1L << (codePoint - 64))) != 0;
+        }
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (codePoint < ranges[2 * middle]) {
+                high = middle - 1;
+            } else if (codePoint > ranges[2 * middle + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the smallest code point of the set, or -1 if the set is empty.
+     */
+    int first() {
+        return ranges.length == 0 ? -1 : ranges[0];
+    }
+}
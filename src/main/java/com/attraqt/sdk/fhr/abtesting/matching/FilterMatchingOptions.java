@@ -0,0 +1,72 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Limits applied when A/B test filter patterns are compiled and matched against query parameter values.
+ */
+@Getter
+public class FilterMatchingOptions {
+
+    public static final FilterMatchingOptions DEFAULT = FilterMatchingOptions.builder().build();
+
+    /**
+     * Returns the maximum length of a value that is matched against a filter pattern. Longer values never match. 0
+     * means unlimited.
+     *
+     * @return The maximum input length
+     */
+    private final int maxInputLength;
+    /**
+     * Returns the maximum number of steps a single match may take. A match which takes more steps fails. 0 means
+     * unlimited.
+     *
+     * @return The maximum number of match steps
+     */
+    private final long maxMatchSteps;
+    /**
+     * Returns whether filter patterns the linear-time matcher does not support are rejected, rather than matched by
+     * {@link java.util.regex.Pattern}. The A/B tests with a rejected pattern are never matched.
+     *
+     * @return true if unsupported patterns are rejected
+     */
+    private final boolean rejectUnsupportedPatterns;
+
+    /**
+     * Constructs a {@link FilterMatchingOptions}. Use {@link FilterMatchingOptions#builder()}.
+     *
+     * @param maxInputLength            The maximum length of a matched value. Defaults to 0, unlimited.
+     * @param maxMatchSteps             The maximum number of steps of a single match. Defaults to 0, unlimited.
+     * @param rejectUnsupportedPatterns Whether to reject the patterns the linear-time matcher does not support.
+     *                                  Defaults to false.
+     */
+    @Builder
+    private FilterMatchingOptions(Integer maxInputLength, Long maxMatchSteps, Boolean rejectUnsupportedPatterns) {
+        if ((maxInputLength != null && maxInputLength < 0) || (maxMatchSteps != null && maxMatchSteps < 0)) {
+            throw new IllegalArgumentException("maxInputLength and maxMatchSteps must not be negative.");
+        }
+        this.maxInputLength = maxInputLength == null ? 0 : maxInputLength;
+        this.maxMatchSteps = maxMatchSteps == null ? 0 : maxMatchSteps;
+        this.rejectUnsupportedPatterns = rejectUnsupportedPatterns != null && rejectUnsupportedPatterns;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A compiled A/B test filter pattern, matched against the whole of a query parameter value like
+ * {@link java.util.regex.Matcher#matches()}.
+ * <p>
+ * Patterns are compiled for a linear-time matcher which simulates the pattern's automaton instead of backtracking, so
+ * the cost of a match grows linearly with the length of the value whatever the pattern is. It supports literals,
+ * {@code .}, character classes, the {@code \d \w \s} classes and their negations, groups, alternation, greedy and lazy
+ * quantifiers, and {@code ^ $}. Patterns using anything else, such as back-references or lookaround, either fall
+ * back to {@link Pattern} or are rejected, depending on {@link FilterMatchingOptions#isRejectUnsupportedPatterns()}.
+ */
+@Slf4j
+public abstract class FilterPattern {
+
+    /**
+     * Returns the source of the pattern.
+     *
+     * @return The pattern
+     */
+    @Getter
+    private final String pattern;
+    private final int maxInputLength;
+
+    FilterPattern(String pattern, FilterMatchingOptions options) {
+        this.pattern = pattern;
+        this.maxInputLength = options.getMaxInputLength();
+    }
+
+    /**
+     * Compiles a filter pattern.
+     *
+     * @param pattern The pattern, in {@link Pattern} syntax
+     * @param options The matching limits
+     * @return A {@link FilterPattern}
+     * @throws PatternSyntaxException   If the pattern is not valid
+     * @throws IllegalArgumentException If the pattern is not supported by the linear-time matcher, and unsupported
+     *                                  patterns are rejected
+     */
+    public static FilterPattern compile(String pattern, FilterMatchingOptions options) {
+        // Validates the syntax exactly as java.util.regex does, so that both matchers accept the same patterns.
+        Pattern backtrackingPattern = Pattern.compile(pattern);
+        try {
+            return new FilterPatternParser(pattern).compile(options);
+        } catch (FilterPatternParser.UnsupportedPatternException e) {
+            if (options.isRejectUnsupportedPatterns()) {
+                throw new IllegalArgumentException(
+                    String.format("Filter pattern %s is not supported: %s", pattern, e.getMessage()));
+            }
+            log.warn("Filter pattern {} is not supported by the linear-time matcher ({}). It will be matched by "
+                + "java.util.regex.", pattern, e.getMessage());
+            return new BacktrackingFilterPattern(backtrackingPattern, options);
+        }
+    }
+
+    /**
+     * Checks whether the whole value matches the pattern. Values longer than
+     * {@link FilterMatchingOptions#getMaxInputLength()}, and matches which take more than
+     * {@link FilterMatchingOptions#getMaxMatchSteps()}, do not match.
+     *
+     * @param value The value
+     * @return true if the value matches
+     */
+    public boolean matches(String value) {
+        if (maxInputLength > 0 && value.length() > maxInputLength) {
+            log.debug("Value of length {} exceeds the maximum input length of filter pattern {}.", value.length(),
+                pattern);
+            return false;
+        }
+        return matchesWithinBudget(value);
+    }
+
+    /**
+     * Returns an example of a value which matches the pattern, for instance to warm up the request path with
+     * representative query parameters.
+     *
+     * @return A matching value, or null if none is known.
+     */
+    public String getSample() {
+        return null;
+    }
+
+    /**
+     * Returns whether the pattern is matched in linear time.
+     *
+     * @return true if the pattern is matched by the linear-time matcher
+     */
+    public abstract boolean isLinear();
+
+    abstract boolean matchesWithinBudget(String value);
+}
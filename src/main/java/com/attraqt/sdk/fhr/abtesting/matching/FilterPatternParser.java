@@ -0,0 +1,601 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses a filter pattern and compiles it to the program of a {@link LinearFilterPattern}. Only the subset of the
+ * {@link java.util.regex.Pattern} syntax which can be matched without backtracking is accepted; the syntax itself is
+ * expected to have been validated by {@link java.util.regex.Pattern#compile(String)} already.
+ */
+final class FilterPatternParser {
+
+    /**
+     * The maximum number of instructions of a program, which bounds the expansion of counted repetitions.
+     */
+    static final int MAX_PROGRAM_SIZE = 4096;
+
+    private static final CodePointSet DOT = CodePointSet.LINE_TERMINATOR.complement();
+
+    private final String pattern;
+    private int position;
+
+    FilterPatternParser(String pattern) {
+        this.pattern = pattern;
+    }
+
+    LinearFilterPattern compile(FilterMatchingOptions options) throws UnsupportedPatternException {
+        Node node = parseAlternation();
+        if (position < pattern.length()) {
+            throw new UnsupportedPatternException("unbalanced ) at index " + position);
+        }
+
+        Program program = new Program();
+        node.emit(program);
+        program.add(LinearFilterPattern.MATCH, 0, 0);
+        return new LinearFilterPattern(
+            pattern,
+            options,
+            program.opcodes.stream().mapToInt(Integer::intValue).toArray(),
+            program.arguments.stream().mapToInt(Integer::intValue).toArray(),
+            program.alternatives.stream().mapToInt(Integer::intValue).toArray(),
+            program.sets.toArray(new CodePointSet[0]),
+            node.literal());
+    }
+
+    private Node parseAlternation() throws UnsupportedPatternException {
+        List<Node> alternatives = new ArrayList<>();
+        alternatives.add(parseSequence());
+        while (position < pattern.length() && pattern.charAt(position) == '|') {
+            position++;
+            alternatives.add(parseSequence());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+    }
+
+    private Node parseSequence() throws UnsupportedPatternException {
+        List<Node> nodes = new ArrayList<>();
+        while (position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+            if (pattern.startsWith("\\Q", position)) {
+                // A quantifier after a quoted sequence only applies to its last character.
+                List<Node> literals = parseQuoted();
+                nodes.addAll(literals.subList(0, Math.max(literals.size() - 1, 0)));
+                if (!literals.isEmpty()) {
+                    nodes.add(parseQuantifier(literals.get(literals.size() - 1)));
+                }
+            } else {
+                nodes.add(parseQuantifier(parseAtom()));
+            }
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes);
+    }
+
+    private Node parseQuantifier(Node atom) throws UnsupportedPatternException {
+        if (position >= pattern.length()) {
+            return atom;
+        }
+
+        int min;
+        int max;
+        switch (pattern.charAt(position)) {
+            case '*':
+                min = 0;
+                max = -1;
+                position++;
+                break;
+            case '+':
+                min = 1;
+                max = -1;
+                position++;
+                break;
+            case '?':
+                min = 0;
+                max = 1;
+                position++;
+                break;
+            case '{':
+                position++;
+                min = parseNumber();
+                max = min;
+                if (peek() == ',') {
+                    position++;
+                    max = peek() == '}' ? -1 : parseNumber();
+                }
+                expect('}');
+                break;
+            default:
+                return atom;
+        }
+        // java.util.regex stops repeating a group early when an iteration matches the empty value, which makes anchors
+        // inside repeated groups behave differently from a plain automaton.
+        if (atom.hasAssertion()) {
+            throw new UnsupportedPatternException("repeated ^ or $ at index " + position);
+        }
+
+        // Lazy quantifiers accept the same values as greedy ones when the whole value must match; possessive ones
+        // do not, as they never give back what they consumed.
+        if (peek() == '?') {
+            position++;
+        } else if (peek() == '+') {
+            throw new UnsupportedPatternException("possessive quantifier at index " + position);
+        }
+        return new Repetition(atom, min, max);
+    }
+
+    private Node parseAtom() throws UnsupportedPatternException {
+        int codePoint = pattern.codePointAt(position);
+        position += Character.charCount(codePoint);
+        switch (codePoint) {
+            case '(':
+                parseGroupPrefix();
+                Node group = parseAlternation();
+                expect(')');
+                return group;
+            case '[':
+                return new CharacterClass(parseClass());
+            case '.':
+                return new CharacterClass(DOT);
+            case '^':
+                return new Assertion(LinearFilterPattern.BEGIN);
+            case '$':
+                return new Assertion(LinearFilterPattern.END);
+            case '\\':
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new UnsupportedPatternException("dangling " + (char) codePoint + " at index " + (position - 1));
+            default:
+                return new Literal(codePoint);
+        }
+    }
+
+    /**
+     * Skips the prefix of a capturing, named or non-capturing group. Captures are irrelevant to matching.
+     */
+    private void parseGroupPrefix() throws UnsupportedPatternException {
+        if (peek() != '?') {
+            return;
+        }
+        if (pattern.startsWith("?:", position)) {
+            position += 2;
+        } else if (pattern.startsWith("?<", position) && position + 2 < pattern.length()
+            && Character.isLetter(pattern.charAt(position + 2))) {
+            position = pattern.indexOf('>', position) + 1;
+        } else {
+            throw new UnsupportedPatternException("special group at index " + (position - 1));
+        }
+    }
+
+    private List<Node> parseQuoted() {
+        int start = position + 2;
+        int end = pattern.indexOf("\\E", start);
+        String quoted = pattern.substring(start, end < 0 ? pattern.length() : end);
+        position = end < 0 ? pattern.length() : end + 2;
+
+        List<Node> literals = new ArrayList<>();
+        quoted.codePoints().forEach(codePoint -> literals.add(new Literal(codePoint)));
+        return literals;
+    }
+
+    private Node parseEscape() throws UnsupportedPatternException {
+        int codePoint = next();
+        CodePointSet set = escapedSet(codePoint);
+        return set == null ? new Literal(escapedCodePoint(codePoint)) : new CharacterClass(set);
+    }
+
+    private CodePointSet parseClass() throws UnsupportedPatternException {
+        boolean negated = peek() == '^';
+        if (negated) {
+            position++;
+        }
+        if (peek() == ']') {
+            throw new UnsupportedPatternException("class starting with ] at index " + position);
+        }
+
+        List<int[]> ranges = new ArrayList<>();
+        while (true) {
+            if (position >= pattern.length()) {
+                throw new UnsupportedPatternException("unclosed class");
+            }
+            int codePoint = next();
+            if (codePoint == ']') {
+                break;
+            }
+            if (codePoint == '[' || (codePoint == '&' && peek() == '&')) {
+                throw new UnsupportedPatternException("nested class or class intersection at index " + position);
+            }
+
+            int low = codePoint;
+            if (codePoint == '\\') {
+                int escaped = next();
+                CodePointSet set = escapedSet(escaped);
+                if (set != null) {
+                    ranges.addAll(set.ranges());
+                    continue;
+                }
+                low = escapedCodePoint(escaped);
+            }
+
+            int high = low;
+            if (peek() == '-' && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+                position++;
+                high = next();
+                if (high == '[') {
+                    throw new UnsupportedPatternException("nested class at index " + position);
+                }
+                if (high == '\\') {
+                    int escaped = next();
+                    if (escapedSet(escaped) != null) {
+                        throw new UnsupportedPatternException("class as a range bound at index " + position);
+                    }
+                    high = escapedCodePoint(escaped);
+                }
+            }
+            ranges.add(CodePointSet.range(low, high));
+        }
+
+        CodePointSet set = CodePointSet.union(ranges);
+        return negated ? set.complement() : set;
+    }
+
+    private static CodePointSet escapedSet(int codePoint) {
+        switch (codePoint) {
+            case 'd':
+                return CodePointSet.DIGIT;
+            case 'D':
+                return CodePointSet.DIGIT.complement();
+            case 'w':
+                return CodePointSet.WORD;
+            case 'W':
+                return CodePointSet.WORD.complement();
+            case 's':
+                return CodePointSet.SPACE;
+            case 'S':
+                return CodePointSet.SPACE.complement();
+            default:
+                return null;
+        }
+    }
+
+    private int escapedCodePoint(int codePoint) throws UnsupportedPatternException {
+        switch (codePoint) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return 0x07;
+            case 'e':
+                return 0x1B;
+            case 'x':
+                if (peek() == '{') {
+                    int end = pattern.indexOf('}', position);
+                    int value = Integer.parseInt(pattern.substring(position + 1, end), 16);
+                    position = end + 1;
+                    return value;
+                }
+                return parseDigits(2, 16);
+            case 'u':
+                return parseDigits(4, 16);
+            case '0':
+                int digits = 1;
+                while (digits < 3 && position + digits < pattern.length()
+                    && Character.digit(pattern.charAt(position + digits), 8) >= 0) {
+                    digits++;
+                }
+                // A third octal digit is only part of the escape if the first one is at most 3.
+                if (digits == 3 && pattern.charAt(position) > '3') {
+                    digits = 2;
+                }
+                return parseDigits(digits, 8);
+            default:
+                if (codePoint < 128 && !Character.isLetterOrDigit(codePoint)) {
+                    return codePoint;
+                }
+                throw new UnsupportedPatternException("\\" + Character.toString(codePoint) + " at index " + position);
+        }
+    }
+
+    private int parseDigits(int count, int radix) {
+        int value = Integer.parseInt(pattern.substring(position, position + count), radix);
+        position += count;
+        return value;
+    }
+
+    private int parseNumber() throws UnsupportedPatternException {
+        int start = position;
+        while (position < pattern.length() && Character.isDigit(pattern.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw new UnsupportedPatternException("malformed repetition at index " + start);
+        }
+        return Integer.parseInt(pattern.substring(start, position));
+    }
+
+    private int next() throws UnsupportedPatternException {
+        if (position >= pattern.length()) {
+            throw new UnsupportedPatternException("unexpected end of pattern");
+        }
+        int codePoint = pattern.codePointAt(position);
+        position += Character.charCount(codePoint);
+        return codePoint;
+    }
+
+    private int peek() {
+        return position < pattern.length() ? pattern.charAt(position) : -1;
+    }
+
+    private void expect(char expected) throws UnsupportedPatternException {
+        if (peek() != expected) {
+            throw new UnsupportedPatternException(expected + " expected at index " + position);
+        }
+        position++;
+    }
+
+    /**
+     * Thrown when a pattern uses a construct the linear-time matcher does not support.
+     */
+    static final class UnsupportedPatternException extends Exception {
+
+        UnsupportedPatternException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Program {
+
+        private final List<Integer> opcodes = new ArrayList<>();
+        private final List<Integer> arguments = new ArrayList<>();
+        private final List<Integer> alternatives = new ArrayList<>();
+        private final List<CodePointSet> sets = new ArrayList<>();
+
+        int size() {
+            return opcodes.size();
+        }
+
+        int add(int opcode, int argument, int alternative) throws UnsupportedPatternException {
+            if (opcodes.size() >= MAX_PROGRAM_SIZE) {
+                throw new UnsupportedPatternException("pattern too large");
+            }
+            opcodes.add(opcode);
+            arguments.add(argument);
+            alternatives.add(alternative);
+            return opcodes.size() - 1;
+        }
+
+        int addSet(CodePointSet set) {
+            sets.add(set);
+            return sets.size() - 1;
+        }
+
+        void setArgument(int pc, int argument) {
+            arguments.set(pc, argument);
+        }
+
+        void setAlternative(int pc, int alternative) {
+            alternatives.set(pc, alternative);
+        }
+    }
+
+    private abstract static class Node {
+
+        abstract void emit(Program program) throws UnsupportedPatternException;
+
+        /**
+         * Returns the value this node matches if it only matches a single literal value, or null.
+         */
+        String literal() {
+            return null;
+        }
+
+        boolean hasAssertion() {
+            return false;
+        }
+    }
+
+    private static final class Literal extends Node {
+
+        private final int codePoint;
+
+        private Literal(int codePoint) {
+            this.codePoint = codePoint;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            program.add(LinearFilterPattern.LITERAL, codePoint, 0);
+        }
+
+        @Override
+        String literal() {
+            return Character.toString(codePoint);
+        }
+    }
+
+    private static final class CharacterClass extends Node {
+
+        private final CodePointSet set;
+
+        private CharacterClass(CodePointSet set) {
+            this.set = set;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            program.add(LinearFilterPattern.SET, program.addSet(set), 0);
+        }
+    }
+
+    private static final class Assertion extends Node {
+
+        private final int opcode;
+
+        private Assertion(int opcode) {
+            this.opcode = opcode;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            program.add(opcode, 0, 0);
+        }
+
+        @Override
+        boolean hasAssertion() {
+            return true;
+        }
+    }
+
+    private static final class Sequence extends Node {
+
+        private final List<Node> nodes;
+
+        private Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            for (Node node : nodes) {
+                node.emit(program);
+            }
+        }
+
+        @Override
+        String literal() {
+            StringBuilder literal = new StringBuilder();
+            for (Node node : nodes) {
+                String nodeLiteral = node.literal();
+                if (nodeLiteral == null) {
+                    return null;
+                }
+                literal.append(nodeLiteral);
+            }
+            return literal.toString();
+        }
+
+        @Override
+        boolean hasAssertion() {
+            return nodes.stream().anyMatch(Node::hasAssertion);
+        }
+    }
+
+    private static final class Alternation extends Node {
+
+        private final List<Node> alternatives;
+
+        private Alternation(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < alternatives.size() - 1; i++) {
+                int split = program.add(LinearFilterPattern.SPLIT, program.size() + 1, 0);
+                alternatives.get(i).emit(program);
+                jumps.add(program.add(LinearFilterPattern.JUMP, 0, 0));
+                program.setAlternative(split, program.size());
+            }
+            alternatives.get(alternatives.size() - 1).emit(program);
+            for (int jump : jumps) {
+                program.setArgument(jump, program.size());
+            }
+        }
+
+        @Override
+        boolean hasAssertion() {
+            return alternatives.stream().anyMatch(Node::hasAssertion);
+        }
+    }
+
+    private static final class Repetition extends Node {
+
+        private final Node node;
+        private final int min;
+        private final int max;
+
+        private Repetition(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        void emit(Program program) throws UnsupportedPatternException {
+            int start = program.size();
+            if (min > 0) {
+                node.emit(program);
+                // A repeated empty node matches the empty value however often it is repeated.
+                if (program.size() == start) {
+                    return;
+                }
+                for (int i = 1; i < min; i++) {
+                    node.emit(program);
+                }
+            }
+
+            if (max < 0) {
+                int split = program.add(LinearFilterPattern.SPLIT, program.size() + 1, 0);
+                node.emit(program);
+                program.add(LinearFilterPattern.JUMP, split, 0);
+                program.setAlternative(split, program.size());
+                return;
+            }
+
+            List<Integer> splits = new ArrayList<>();
+            for (int i = min; i < max; i++) {
+                int split = program.add(LinearFilterPattern.SPLIT, program.size() + 1, 0);
+                int body = program.size();
+                node.emit(program);
+                splits.add(split);
+                if (program.size() == body) {
+                    break;
+                }
+            }
+            for (int split : splits) {
+                program.setAlternative(split, program.size());
+            }
+        }
+
+        @Override
+        String literal() {
+            String literal = node.literal();
+            if (literal == null || min != max) {
+                return null;
+            }
+            return literal.isEmpty() ? literal : String.join("", Collections.nCopies(min, literal));
+        }
+
+        @Override
+        boolean hasAssertion() {
+            return node.hasAssertion();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching;
+
+import java.util.Arrays;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A filter pattern matched by simulating its automaton over all of its states at once, in the manner of a Pike VM.
+ * <p>
+ * Each position of the value is visited once, and each instruction of the program at most once per position, so a
+ * match takes at most {@code value length * program size} steps and never backtracks. Patterns which only match a
+ * single literal value are compared directly.
+ */
+@Slf4j
+final class LinearFilterPattern extends FilterPattern {
+
+    static final int LITERAL = 0;
+    static final int SET = 1;
+    static final int SPLIT = 2;
+    static final int JUMP = 3;
+    static final int BEGIN = 4;
+    static final int END = 5;
+    static final int MATCH = 6;
+
+    private final int[] opcodes;
+    private final int[] arguments;
+    private final int[] alternatives;
+    private final CodePointSet[] sets;
+    private final String literal;
+    private final long maxMatchSteps;
+    // Only searched for on first use, as samples are only needed to warm up the request path.
+    private final Supplier<String> sample = Suppliers.memoize(this::findSample);
+
+    LinearFilterPattern(String pattern,
+                        FilterMatchingOptions options,
+                        int[] opcodes,
+                        int[] arguments,
+                        int[] alternatives,
+                        CodePointSet[] sets,
+                        String literal) {
+        super(pattern, options);
+        this.opcodes = opcodes;
+        this.arguments = arguments;
+        this.alternatives = alternatives;
+        this.sets = sets;
+        this.literal = literal;
+        this.maxMatchSteps = options.getMaxMatchSteps() > 0 ? options.getMaxMatchSteps() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public String getSample() {
+        return literal == null ? sample.get() : literal;
+    }
+
+    @Override
+    public boolean isLinear() {
+        return true;
+    }
+
+    @Override
+    boolean matchesWithinBudget(String value) {
+        if (literal != null) {
+            return literal.equals(value);
+        }
+
+        Execution execution = new Execution(value);
+        int[] current = new int[opcodes.length];
+        int[] next = new int[opcodes.length];
+        int currentCount = execution.addClosure(0, 0, current, 0);
+
+        int position = 0;
+        while (currentCount > 0) {
+            if (position == value.length()) {
+                for (int i = 0; i < currentCount; i++) {
+                    if (opcodes[current[i]] == MATCH) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            int codePoint = value.codePointAt(position);
+            int nextPosition = position + Character.charCount(codePoint);
+            execution.mark++;
+            int nextCount = 0;
+            for (int i = 0; i < currentCount; i++) {
+                int pc = current[i];
+                if ((opcodes[pc] == LITERAL && arguments[pc] == codePoint)
+                    || (opcodes[pc] == SET && sets[arguments[pc]].contains(codePoint))) {
+                    nextCount = execution.addClosure(pc + 1, nextPosition, next, nextCount);
+                }
+            }
+            execution.steps += currentCount;
+            if (execution.steps > maxMatchSteps) {
+                log.debug("Matching filter pattern {} exceeded the maximum of {} steps.", getPattern(),
+                    maxMatchSteps);
+                return false;
+            }
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentCount = nextCount;
+            position = nextPosition;
+        }
+        return false;
+    }
+
+    /**
+     * Finds a shortest value which matches, by a breadth-first search over the states of the program. A state is an
+     * instruction and whether anything has been consumed yet, for ^, or whether $ has been passed.
+     */
+    private String findSample() {
+        int stateCount = 3 * opcodes.length;
+        int[] parents = new int[stateCount];
+        Arrays.fill(parents, -1);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        parents[0] = 0;
+
+        while (head < tail) {
+            int state = queue[head++];
+            int pc = state / 3;
+            int phase = state % 3;
+            int[] successors;
+            switch (opcodes[pc]) {
+                case MATCH:
+                    return sampleOf(state, parents);
+                case LITERAL:
+                    successors = phase == 2 ? new int[0] : new int[] {3 * (pc + 1) + 1};
+                    break;
+                case SET:
+                    successors = phase == 2 || sets[arguments[pc]].first() < 0 ? new int[0] :
+                        new int[] {3 * (pc + 1) + 1};
+                    break;
+                case SPLIT:
+                    successors = new int[] {3 * arguments[pc] + phase, 3 * alternatives[pc] + phase};
+                    break;
+                case JUMP:
+                    successors = new int[] {3 * arguments[pc] + phase};
+                    break;
+                case BEGIN:
+                    successors = phase == 0 ? new int[] {3 * (pc + 1)} : new int[0];
+                    break;
+                default:
+                    successors = new int[] {3 * (pc + 1) + 2};
+            }
+            for (int successor : successors) {
+                if (parents[successor] < 0) {
+                    parents[successor] = state;
+                    queue[tail++] = successor;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String sampleOf(int matchState, int[] parents) {
+        StringBuilder reversed = new StringBuilder();
+        for (int state = matchState; state != 0; state = parents[state]) {
+            int pc = parents[state] / 3;
+            if (opcodes[pc] == LITERAL) {
+                reversed.appendCodePoint(arguments[pc]);
+            } else if (opcodes[pc] == SET) {
+                reversed.appendCodePoint(representative(sets[arguments[pc]]));
+            }
+        }
+        // Surrogate pairs are kept in order by the reversal.
+        String value = reversed.reverse().toString();
+        return matchesWithinBudget(value) ? value : null;
+    }
+
+    private static int representative(CodePointSet set) {
+        for (int codePoint = 'a'; codePoint <= 'z'; codePoint++) {
+            if (set.contains(codePoint)) {
+                return codePoint;
+            }
+        }
+        for (int codePoint = '!'; codePoint <= '~'; codePoint++) {
+            if (set.contains(codePoint)) {
+                return codePoint;
+            }
+        }
+        return set.first();
+    }
+
+    /**
+     * The per-match state: the instructions visited at the current position and the steps taken so far.
+     */
+    private final class Execution {
+
+        private final String value;
+        private final int[] marks = new int[opcodes.length];
+        private final int[] stack = new int[2 * opcodes.length + 1];
+        private int mark = 1;
+        private long steps;
+
+        private Execution(String value) {
+            this.value = value;
+        }
+
+        /**
+         * Adds the instructions reachable from start without consuming input to threads, and returns the new number of
+         * threads. Only instructions which consume input, and MATCH, are added.
+         */
+        private int addClosure(int start, int position, int[] threads, int count) {
+            int top = 0;
+            stack[top++] = start;
+            while (top > 0) {
+                int pc = stack[--top];
+                if (marks[pc] == mark) {
+                    continue;
+                }
+                marks[pc] = mark;
+                steps++;
+                switch (opcodes[pc]) {
+                    case JUMP:
+                        stack[top++] = arguments[pc];
+                        break;
+                    case SPLIT:
+                        stack[top++] = alternatives[pc];
+                        stack[top++] = arguments[pc];
+                        break;
+                    case BEGIN:
+                        if (position == 0) {
+                            stack[top++] = pc + 1;
+                        }
+                        break;
+                    case END:
+                        if (isEnd(position)) {
+                            stack[top++] = pc + 1;
+                        }
+                        break;
+                    default:
+                        threads[count++] = pc;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Whether $ matches at position: at the end of the value, or before a line terminator which ends it.
+         */
+        private boolean isEnd(int position) {
+            int remaining = value.length() - position;
+            if (remaining == 0) {
+                return true;
+            }
+            if (remaining == 2) {
+                return value.charAt(position) == '\r' && value.charAt(position + 1) == '\n';
+            }
+            if (remaining == 1) {
+                char c = value.charAt(position);
+                if (c == '\n') {
+                    return position == 0 || value.charAt(position - 1) != '\r';
+                }
+                return CodePointSet.LINE_TERMINATOR.contains(c);
+            }
+            return false;
+        }
+    }
+}
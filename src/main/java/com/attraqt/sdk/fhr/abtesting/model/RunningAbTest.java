@@ -26,6 +26,10 @@ import java.util.Map;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -35,6 +39,9 @@ import lombok.Getter;
 @Getter
 public final class RunningAbTest {
 
+    // The ids, filter names and patterns repeat across A/B tests and refreshes, so only one copy of each is kept.
+    private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
     /**
      * Returns the id of the ab-test.
      *
@@ -59,9 +66,54 @@ public final class RunningAbTest {
                          @JsonProperty("variations") List<RunningAbTestVariant> variations,
                          @JsonProperty("filters") Map<String, List<String>> filters
     ) {
-        this.id = id;
-        this.variations = variations;
-        this.filters = filters;
+        this.id = intern(id);
+        this.variations = compactVariations(variations);
+        this.filters = compactFilters(filters);
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : STRING_INTERNER.intern(value);
+    }
+
+    /**
+     * Copies the variations into an immutable list sized to fit. A list with null elements is kept as is.
+     */
+    private static List<RunningAbTestVariant> compactVariations(List<RunningAbTestVariant> variations) {
+        if (variations == null) {
+            return null;
+        }
+        for (RunningAbTestVariant variation : variations) {
+            if (variation == null) {
+                return variations;
+            }
+        }
+        return ImmutableList.copyOf(variations);
+    }
+
+    /**
+     * Copies the filters into an immutable map of immutable lists sized to fit, with interned names and patterns. A
+     * map with null names, lists or patterns is kept as is.
+     */
+    private static Map<String, List<String>> compactFilters(Map<String, List<String>> filters) {
+        if (filters == null) {
+            return null;
+        }
+        ImmutableMap.Builder<String, List<String>> compactFilters =
+            ImmutableMap.builderWithExpectedSize(filters.size());
+        for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+            if (filter.getKey() == null || filter.getValue() == null) {
+                return filters;
+            }
+            ImmutableList.Builder<String> patterns = ImmutableList.builderWithExpectedSize(filter.getValue().size());
+            for (String pattern : filter.getValue()) {
+                if (pattern == null) {
+                    return filters;
+                }
+                patterns.add(STRING_INTERNER.intern(pattern));
+            }
+            compactFilters.put(STRING_INTERNER.intern(filter.getKey()), patterns.build());
+        }
+        return compactFilters.build();
     }
 
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -84,7 +136,7 @@ public final class RunningAbTest {
 
         @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
         public RunningAbTestVariant(@JsonProperty("id") String id, @JsonProperty("weight") Integer weight) {
-            this.id = id;
+            this.id = intern(id);
             this.weight = weight;
         }
     }
@@ -0,0 +1,63 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * The limits of the warm-up run over newly fetched A/B tests before they are cached. The warm-up stops at whichever
+ * limit is reached first.
+ */
+@Getter
+public class WarmUpOptions {
+
+    public static final int DEFAULT_MAX_ITERATIONS = 20_000;
+    public static final long DEFAULT_TIME_BUDGET_IN_MILLIS = 500;
+
+    /**
+     * Returns the maximum number of synthetic requests of a warm-up.
+     *
+     * @return The maximum number of iterations
+     */
+    private final int maxIterations;
+    /**
+     * Returns the maximum duration of a warm-up.
+     *
+     * @return The time budget in milliseconds
+     */
+    private final long timeBudgetInMillis;
+
+    /**
+     * Constructs a {@link WarmUpOptions}. Use {@link WarmUpOptions#builder()}.
+     *
+     * @param maxIterations      The maximum number of synthetic requests. Defaults to
+     *                           {@value WarmUpOptions#DEFAULT_MAX_ITERATIONS}.
+     * @param timeBudgetInMillis The maximum duration. Defaults to {@value WarmUpOptions#DEFAULT_TIME_BUDGET_IN_MILLIS}.
+     */
+    @Builder
+    private WarmUpOptions(Integer maxIterations, Long timeBudgetInMillis) {
+        if ((maxIterations != null && maxIterations < 0) || (timeBudgetInMillis != null && timeBudgetInMillis < 0)) {
+            throw new IllegalArgumentException("maxIterations and timeBudgetInMillis must not be negative.");
+        }
+        this.maxIterations = maxIterations == null ? DEFAULT_MAX_ITERATIONS : maxIterations;
+        this.timeBudgetInMillis = timeBudgetInMillis == null ? DEFAULT_TIME_BUDGET_IN_MILLIS : timeBudgetInMillis;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.model;
+
+import lombok.Value;
+
+/**
+ * The outcome of a warm-up run over newly fetched A/B tests. Used by
+ * {@link com.attraqt.sdk.fhr.abtesting.scheduling.AbTestsRetrievalScheduler}
+ */
+@Value
+public class WarmUpResult {
+
+    /**
+     * Returns the number of synthetic requests run by the warm-up.
+     *
+     * @return The number of iterations
+     */
+    int iterations;
+    /**
+     * Returns the duration of the warm-up.
+     *
+     * @return The warm-up time in milliseconds
+     */
+    long timeInMillis;
+}
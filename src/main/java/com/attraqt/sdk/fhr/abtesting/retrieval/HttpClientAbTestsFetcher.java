@@ -0,0 +1,105 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Handles fetching the A/B tests from FHR A/B Tests Service by using basic authentication, with the JDK
+ * {@link HttpClient}.
+ * <p>
+ * Unlike {@link BasicAuthenticationAbTestsFetcher} it does not need Jersey, so it avoids the Jersey and HK2 start-up
+ * cost. The client is created once and prefers HTTP/2, and the response is parsed by Jackson directly from the body.
+ */
+public class HttpClientAbTestsFetcher implements RunningAbTestsFetcher {
+
+    private static final String BASIC_AUTH_PREFIX = "Basic ";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<RunningAbTest>> RUNNING_AB_TESTS_TYPE = new TypeReference<>() {
+    };
+
+    private final URI runningAbTestsPath;
+    private final String authorizationHeaderValue;
+    private final Duration readTimeout;
+    private final HttpClient client;
+
+    /**
+     * Constructs an {@link HttpClientAbTestsFetcher}.
+     *
+     * @param username                   The username
+     * @param password                   The password
+     * @param runningAbTestsPath         The URI of the endpoint which serves the A/B tests
+     * @param connectionTimeoutInSeconds The timeout to connect to A/B tests server
+     * @param readTimeoutInSeconds       The timeout to read from A/B tests server
+     */
+    public HttpClientAbTestsFetcher(String username,
+                                    String password,
+                                    URI runningAbTestsPath,
+                                    int connectionTimeoutInSeconds,
+                                    int readTimeoutInSeconds) {
+        this.runningAbTestsPath = runningAbTestsPath;
+        this.authorizationHeaderValue = BASIC_AUTH_PREFIX +
+            Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.readTimeout = Duration.ofSeconds(readTimeoutInSeconds);
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(connectionTimeoutInSeconds))
+            .build();
+    }
+
+    public List<RunningAbTest> getRunningAbTests() {
+        HttpRequest request = HttpRequest.newBuilder(runningAbTestsPath)
+            .timeout(readTimeout)
+            .header("Accept", "application/json")
+            .header("Authorization", authorizationHeaderValue)
+            .GET()
+            .build();
+
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    throw new IllegalStateException(
+                        String.format("FHR A/B Tests Service responded with status %d.", response.statusCode()));
+                }
+                return OBJECT_MAPPER.readValue(body, RUNNING_AB_TESTS_TYPE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching A/B tests.", e);
+        }
+    }
+}
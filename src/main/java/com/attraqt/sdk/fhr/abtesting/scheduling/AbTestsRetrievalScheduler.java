@@ -23,10 +23,12 @@ import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.attraqt.sdk.fhr.abtesting.caching.AbTestsCache;
 import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
 import com.attraqt.sdk.fhr.abtesting.model.SchedulingOptions;
+import com.attraqt.sdk.fhr.abtesting.model.WarmUpResult;
 import com.attraqt.sdk.fhr.abtesting.retrieval.RunningAbTestsFetcher;
 
 import lombok.extern.slf4j.Slf4j;
@@ -42,6 +44,7 @@ public class AbTestsRetrievalScheduler {
     private static final int MAX_RETRY = 3;
     private static final int INITIAL_ATTEMPT_DELAY = 0;
     private final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1, new DaemonThreadFactory());
+    private volatile WarmUpResult lastWarmUpResult;
 
     /**
      * Shuts down the scheduled {@link ScheduledExecutorService}.
@@ -60,14 +63,29 @@ public class AbTestsRetrievalScheduler {
      */
     public void start(AbTestsCache abTestsCache, RunningAbTestsFetcher runningAbTestsFetcher,
                       SchedulingOptions schedulingOptions) {
+        start(abTestsCache, runningAbTestsFetcher, schedulingOptions, null);
+    }
+
+    /**
+     * Schedules a {@link ScheduledExecutorService} at a fixed rate based on given schedulingOptions to retrieve and
+     * cache A/B tests. Newly fetched A/B tests are passed to warmUp before they are cached.
+     *
+     * @param abTestsCache          The A/B tests cache
+     * @param runningAbTestsFetcher The runningAbTestsFetcher to fetch A/B tests from FHR A/B Tests Service
+     * @param schedulingOptions     A {@link SchedulingOptions} to provide scheduling configurations
+     * @param warmUp                The {@link AbTestsWarmUp} to run before caching the A/B tests, or null
+     */
+    public void start(AbTestsCache abTestsCache, RunningAbTestsFetcher runningAbTestsFetcher,
+                      SchedulingOptions schedulingOptions, AbTestsWarmUp warmUp) {
         ses.scheduleAtFixedRate(
             () -> {
                 try {
-                    retrieveAndCacheAbTests(runningAbTestsFetcher, abTestsCache);
+                    retrieveAndCacheAbTests(runningAbTestsFetcher, abTestsCache, warmUp);
                 } catch (Exception e) {
                     scheduleRetry(
                         runningAbTestsFetcher,
                         abTestsCache,
+                        warmUp,
                         1,
                         schedulingOptions);
                 }
@@ -77,15 +95,26 @@ public class AbTestsRetrievalScheduler {
             schedulingOptions.getCacheTimeUnits());
     }
 
+    /**
+     * Returns the outcome of the last warm-up which actually ran. Refreshes which did not change the A/B tests do not
+     * replace it.
+     *
+     * @return A {@link WarmUpResult}, or null if no warm-up has run yet.
+     */
+    public WarmUpResult getLastWarmUpResult() {
+        return lastWarmUpResult;
+    }
+
     private void scheduleRetry(RunningAbTestsFetcher runningAbTestsFetcher,
                                AbTestsCache abTestsCache,
+                               AbTestsWarmUp warmUp,
                                int retryAttempt,
                                SchedulingOptions schedulingOptions) {
         log.warn("Error occurred while fetching A/B tests! Retrying.");
         ses.schedule(
             () -> {
                 try {
-                    retrieveAndCacheAbTests(runningAbTestsFetcher, abTestsCache);
+                    retrieveAndCacheAbTests(runningAbTestsFetcher, abTestsCache, warmUp);
                 } catch (Exception exception) {
                     if (retryAttempt == MAX_RETRY) {
                         log.error("Max retries exceeded with fetching A/B tests. An outdated cache will be used.");
@@ -96,6 +125,7 @@ public class AbTestsRetrievalScheduler {
                         scheduleRetry(
                             runningAbTestsFetcher,
                             abTestsCache,
+                            warmUp,
                             retryAttempt + 1,
                             schedulingOptions);
                     }
@@ -105,13 +135,38 @@ public class AbTestsRetrievalScheduler {
             schedulingOptions.getCacheTimeUnits());
     }
 
-    private void retrieveAndCacheAbTests(RunningAbTestsFetcher runningAbTestsFetcher, AbTestsCache abTestsCache) {
+    private void retrieveAndCacheAbTests(RunningAbTestsFetcher runningAbTestsFetcher,
+                                         AbTestsCache abTestsCache,
+                                         AbTestsWarmUp warmUp) {
         log.info("Trying to fetch A/B tests.");
         List<RunningAbTest> runningAbTests = runningAbTestsFetcher.getRunningAbTests();
+        if (warmUp != null && runningAbTests != abTestsCache.getAbTests()) {
+            warmUp(warmUp, runningAbTests);
+        }
         abTestsCache.cacheAbTests(runningAbTests);
         log.info("The A/B tests cache is successfully updated.");
     }
 
+    private void warmUp(AbTestsWarmUp warmUp, List<RunningAbTest> runningAbTests) {
+        long start = System.nanoTime();
+        int iterations;
+        try {
+            iterations = warmUp.warmUp(runningAbTests);
+        } catch (Exception e) {
+            // A failed warm-up must not keep the A/B tests from being cached.
+            log.warn("Warming up the A/B tests failed.", e);
+            return;
+        }
+        if (iterations < 0) {
+            return;
+        }
+        WarmUpResult warmUpResult =
+            new WarmUpResult(iterations, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        lastWarmUpResult = warmUpResult;
+        log.info("The A/B tests are warmed up by {} synthetic requests in {} ms.", warmUpResult.getIterations(),
+            warmUpResult.getTimeInMillis());
+    }
+
     private static class DaemonThreadFactory implements ThreadFactory {
 
         public Thread newThread(Runnable r) {
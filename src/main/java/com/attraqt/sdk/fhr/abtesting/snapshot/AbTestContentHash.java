@@ -0,0 +1,88 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.snapshot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest.RunningAbTestVariant;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Hashes the content of an A/B test, so that a refreshed A/B test can be compared with the one in the previous
+ * snapshot without keeping the previous {@link RunningAbTest} reachable.
+ * <p>
+ * Two A/B tests which are equal according to {@link RunningAbTest#equals} have the same hash; the filters are hashed
+ * in key order, as map equality does not depend on the iteration order.
+ */
+final class AbTestContentHash {
+
+    private static final Comparator<Map.Entry<String, List<String>>> BY_KEY =
+        Map.Entry.comparingByKey(Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private AbTestContentHash() {
+    }
+
+    static long of(RunningAbTest abTest) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        putString(hasher, abTest.getId());
+
+        List<RunningAbTestVariant> variations = abTest.getVariations();
+        hasher.putInt(variations == null ? -1 : variations.size());
+        if (variations != null) {
+            for (RunningAbTestVariant variant : variations) {
+                hasher.putBoolean(variant != null);
+                if (variant != null) {
+                    putString(hasher, variant.getId());
+                    hasher.putBoolean(variant.getWeight() != null);
+                    hasher.putInt(variant.getWeight() == null ? 0 : variant.getWeight());
+                }
+            }
+        }
+
+        Map<String, List<String>> filters = abTest.getFilters();
+        hasher.putInt(filters == null ? -1 : filters.size());
+        if (filters != null) {
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(filters.entrySet());
+            entries.sort(BY_KEY);
+            for (Map.Entry<String, List<String>> entry : entries) {
+                putString(hasher, entry.getKey());
+                hasher.putInt(entry.getValue() == null ? -1 : entry.getValue().size());
+                if (entry.getValue() != null) {
+                    for (String pattern : entry.getValue()) {
+                        putString(hasher, pattern);
+                    }
+                }
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putInt(value == null ? -1 : value.length());
+        if (value != null) {
+            hasher.putUnencodedChars(value);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.snapshot;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.attraqt.sdk.fhr.abtesting.matching.FilterPattern;
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+import com.google.common.hash.Hashing;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * An immutable, compiled view of the cached A/B tests, as used on the request path.
+ * <p>
+ * The A/B tests are stored column-wise: ids and filter names are references into a table of distinct strings, filter
+ * patterns are references into a table of distinct compiled patterns, and the variations and filters of every A/B
+ * test are slices of flat int arrays delimited by offsets. Matching and bucketing therefore walk a handful of
+ * contiguous arrays instead of an object graph per A/B test. The snapshot does not keep the source
+ * {@link RunningAbTest} objects reachable: it only refers weakly to the list it was built from, so that resolving the
+ * same list again stays a reference comparison, and compares refreshed A/B tests by a hash of their content.
+ * <p>
+ * Every snapshot belongs to a generation. The generation only changes when an A/B test is added, removed, modified or
+ * reordered, so anything derived from a snapshot can be kept for as long as the generation stays the same. Across
+ * generations, an unchanged A/B test keeps the same {@link AbTestsSnapshot#getTestStamp(int)}, so state derived from
+ * it only has to be rebuilt when its stamp changes.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class AbTestsSnapshot {
+
+    static final AbTestsSnapshot EMPTY = new AbTestsSnapshot(
+        0, new WeakReference<>(Collections.emptyList()), Collections.emptySet(), 0,
+        new String[0], new FilterPattern[0],
+        new int[0], new long[0], new long[0], new boolean[0],
+        new int[] {0}, new int[0], new int[0], new int[0], new int[0],
+        new int[] {0}, new int[0], new int[] {0}, new int[0]);
+
+    /**
+     * Returns the generation of the snapshot.
+     *
+     * @return The generation.
+     */
+    @Getter
+    private final long generation;
+    private final WeakReference<List<RunningAbTest>> source;
+    /**
+     * Returns the ids of the A/B tests which were added, removed or modified in the current generation.
+     *
+     * @return A set of A/B test ids
+     */
+    @Getter
+    private final Set<String> changedTestIds;
+    final long nextTestStamp;
+
+    final String[] strings;
+    final FilterPattern[] patterns;
+
+    // Per A/B test.
+    final int[] testIdRefs;
+    final long[] testStamps;
+    final long[] testContentHashes;
+    final boolean[] testMatchable;
+    final int[] variantOffsets;
+
+    // Per variant, in the order of the variations of each A/B test.
+    final int[] variantIdRefs;
+    final int[] variantWeights;
+
+    // Per variant, in bucketing order: the position of the variant within its A/B test and the cumulative weight.
+    final int[] bucketVariants;
+    final int[] bucketCumulativeWeights;
+
+    // Per A/B test, then per filter.
+    final int[] filterOffsets;
+    final int[] filterKeyRefs;
+    final int[] filterPatternOffsets;
+    final int[] filterPatternRefs;
+
+    /**
+     * Returns a copy of this snapshot for a different, but equal, list of A/B tests. The generation and all the
+     * compiled data are shared.
+     */
+    AbTestsSnapshot withAbTests(List<RunningAbTest> abTests) {
+        return new AbTestsSnapshot(
+            generation, new WeakReference<>(abTests), changedTestIds, nextTestStamp,
+            strings, patterns,
+            testIdRefs, testStamps, testContentHashes, testMatchable,
+            variantOffsets, variantIdRefs, variantWeights, bucketVariants, bucketCumulativeWeights,
+            filterOffsets, filterKeyRefs, filterPatternOffsets, filterPatternRefs);
+    }
+
+    /**
+     * Checks whether this snapshot was built from the given list, by reference.
+     */
+    boolean isBuiltFrom(List<RunningAbTest> abTests) {
+        return source.get() == abTests;
+    }
+
+    /**
+     * Returns the number of A/B tests.
+     *
+     * @return The number of A/B tests.
+     */
+    public int getTestCount() {
+        return testIdRefs.length;
+    }
+
+    /**
+     * Returns the id of the A/B test at the given position.
+     *
+     * @param testIndex The position of the A/B test
+     * @return The id of the A/B test.
+     */
+    public String getTestId(int testIndex) {
+        return strings[testIdRefs[testIndex]];
+    }
+
+    /**
+     * Returns a number which identifies the A/B test at the given position for as long as it is not modified. It is
+     * kept across generations, and is never reused for another A/B test by the same {@link AbTestsSnapshotManager}.
+     *
+     * @param testIndex The position of the A/B test
+     * @return The stamp of the A/B test.
+     */
+    public long getTestStamp(int testIndex) {
+        return testStamps[testIndex];
+    }
+
+    /**
+     * Returns the number of variations of the A/B test at the given position.
+     *
+     * @param testIndex The position of the A/B test
+     * @return The number of variations.
+     */
+    public int getVariationCount(int testIndex) {
+        return variantOffsets[testIndex + 1] - variantOffsets[testIndex];
+    }
+
+    /**
+     * Returns the id of a variant.
+     *
+     * @param testIndex    The position of the A/B test
+     * @param variantIndex The position of the variant in the variations of the A/B test
+     * @return The id of the variant.
+     */
+    public String getVariantId(int testIndex, int variantIndex) {
+        return strings[variantIdRefs[variantOffsets[testIndex] + variantIndex]];
+    }
+
+    /**
+     * Returns the configured weight of a variant, 0 if it has none.
+     *
+     * @param testIndex    The position of the A/B test
+     * @param variantIndex The position of the variant in the variations of the A/B test
+     * @return The weight of the variant.
+     */
+    public int getVariantWeight(int testIndex, int variantIndex) {
+        return variantWeights[variantOffsets[testIndex] + variantIndex];
+    }
+
+    /**
+     * Checks whether the query parameters satisfy every filter of an A/B test. Each filtered parameter must occur
+     * exactly once and its value must match all of the patterns of the filter.
+     *
+     * @param testIndex The position of the A/B test
+     * @param params    The query parameters
+     * @return true if the A/B test applies to the parameters
+     */
+    public boolean matches(int testIndex, Map<String, List<String>> params) {
+        if (!testMatchable[testIndex]) {
+            return false;
+        }
+        for (int filter = filterOffsets[testIndex]; filter < filterOffsets[testIndex + 1]; filter++) {
+            List<String> values = params.get(strings[filterKeyRefs[filter]]);
+            if (values == null) {
+                return false;
+            }
+            for (int i = filterPatternOffsets[filter]; i < filterPatternOffsets[filter + 1]; i++) {
+                // If the filtering param occurring more than once or it's value doesn't match with the pattern
+                if (values.size() != 1 || !patterns[filterPatternRefs[i]].matches(values.get(0))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds query parameters which satisfy the filters of an A/B test, as far as examples of its filter patterns are
+     * known. Used to warm up the request path with representative parameters.
+     *
+     * @param testIndex The position of the A/B test
+     * @return The query parameters
+     */
+    public Map<String, List<String>> getSampleParams(int testIndex) {
+        Map<String, List<String>> params = new HashMap<>();
+        for (int filter = filterOffsets[testIndex]; filter < filterOffsets[testIndex + 1]; filter++) {
+            String sample = null;
+            if (filterPatternOffsets[filter] < filterPatternOffsets[filter + 1]) {
+                sample = patterns[filterPatternRefs[filterPatternOffsets[filter]]].getSample();
+            }
+            params.put(strings[filterKeyRefs[filter]], Collections.singletonList(sample == null ? "" : sample));
+        }
+        return params;
+    }
+
+    /**
+     * Selects the variant of an A/B test for a session. The selection is stable for a given session id and A/B test
+     * id.
+     *
+     * @param testIndex The position of the A/B test
+     * @param sessionId The sessionId
+     * @return The position of the selected variant in the variations of the A/B test, or -1 if the weights do not
+     * cover the session's bucket.
+     */
+    public int selectVariant(int testIndex, String sessionId) {
+        String sessionTestSelection = sessionId + "#" + getTestId(testIndex);
+
+        long percentile =
+            Hashing.murmur3_32().hashUnencodedChars(sessionTestSelection).padToLong() % 100;
+
+        for (int i = variantOffsets[testIndex]; i < variantOffsets[testIndex + 1]; i++) {
+            if (bucketCumulativeWeights[i] > percentile) {
+                return bucketVariants[i];
+            }
+        }
+        return -1;
+    }
+}
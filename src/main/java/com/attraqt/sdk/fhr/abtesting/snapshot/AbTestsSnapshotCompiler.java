@@ -0,0 +1,180 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.snapshot;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
+
+import com.attraqt.sdk.fhr.abtesting.matching.FilterMatchingOptions;
+import com.attraqt.sdk.fhr.abtesting.matching.FilterPattern;
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest.RunningAbTestVariant;
+import com.google.common.primitives.Ints;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the columns of an {@link AbTestsSnapshot}. Compiled filter patterns of the previous snapshot are reused.
+ */
+@Slf4j
+final class AbTestsSnapshotCompiler {
+
+    private final FilterMatchingOptions filterMatchingOptions;
+    private final Map<String, FilterPattern> previousPatterns = new HashMap<>();
+
+    private final Map<String, Integer> stringRefs = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> patternRefs = new HashMap<>();
+    private final List<FilterPattern> patterns = new ArrayList<>();
+
+    private final List<Integer> variantIdRefs = new ArrayList<>();
+    private final List<Integer> variantWeights = new ArrayList<>();
+    private final List<Integer> bucketVariants = new ArrayList<>();
+    private final List<Integer> bucketCumulativeWeights = new ArrayList<>();
+    private final List<Integer> filterKeyRefs = new ArrayList<>();
+    private final List<Integer> filterPatternOffsets = new ArrayList<>(Collections.singletonList(0));
+    private final List<Integer> filterPatternRefs = new ArrayList<>();
+
+    AbTestsSnapshotCompiler(AbTestsSnapshot previous, FilterMatchingOptions filterMatchingOptions) {
+        this.filterMatchingOptions = filterMatchingOptions;
+        for (FilterPattern pattern : previous.patterns) {
+            previousPatterns.put(pattern.getPattern(), pattern);
+        }
+    }
+
+    AbTestsSnapshot compile(long generation,
+                            List<RunningAbTest> abTests,
+                            Set<String> changedTestIds,
+                            long[] testStamps,
+                            long[] testContentHashes,
+                            long nextTestStamp) {
+        int testCount = abTests.size();
+        int[] testIdRefs = new int[testCount];
+        boolean[] testMatchable = new boolean[testCount];
+        int[] variantOffsets = new int[testCount + 1];
+        int[] filterOffsets = new int[testCount + 1];
+
+        for (int i = 0; i < testCount; i++) {
+            RunningAbTest abTest = abTests.get(i);
+            testIdRefs[i] = stringRef(abTest.getId());
+            addVariations(abTest);
+            testMatchable[i] = addFilters(abTest);
+            variantOffsets[i + 1] = variantIdRefs.size();
+            filterOffsets[i + 1] = filterKeyRefs.size();
+        }
+
+        return new AbTestsSnapshot(
+            generation, new WeakReference<>(abTests), changedTestIds, nextTestStamp,
+            strings.toArray(new String[0]), patterns.toArray(new FilterPattern[0]),
+            testIdRefs, testStamps, testContentHashes, testMatchable,
+            variantOffsets, Ints.toArray(variantIdRefs), Ints.toArray(variantWeights),
+            Ints.toArray(bucketVariants), Ints.toArray(bucketCumulativeWeights),
+            filterOffsets, Ints.toArray(filterKeyRefs), Ints.toArray(filterPatternOffsets),
+            Ints.toArray(filterPatternRefs));
+    }
+
+    private void addVariations(RunningAbTest abTest) {
+        List<RunningAbTestVariant> variations =
+            abTest.getVariations() == null ? Collections.emptyList() : abTest.getVariations();
+
+        for (RunningAbTestVariant variant : variations) {
+            variantIdRefs.add(stringRef(variant.getId()));
+            variantWeights.add(variant.getWeight() == null ? 0 : variant.getWeight());
+        }
+
+        // Variants are bucketed in hash code order, the sort is stable for variants with the same hash code.
+        int acc = 0;
+        for (int variantIndex : IntStream.range(0, variations.size())
+            .boxed()
+            .sorted(Comparator.comparing(index -> variations.get(index).hashCode()))
+            .mapToInt(Integer::intValue)
+            .toArray()) {
+            Integer weight = variations.get(variantIndex).getWeight();
+            acc += weight == null ? 0 : weight;
+            bucketVariants.add(variantIndex);
+            bucketCumulativeWeights.add(acc);
+        }
+    }
+
+    private boolean addFilters(RunningAbTest abTest) {
+        if (abTest.getFilters() == null) {
+            return true;
+        }
+
+        boolean matchable = true;
+        for (Map.Entry<String, List<String>> entry : abTest.getFilters().entrySet()) {
+            filterKeyRefs.add(stringRef(entry.getKey()));
+            if (entry.getValue() != null) {
+                for (String pattern : entry.getValue()) {
+                    Integer patternRef = patternRef(pattern);
+                    if (patternRef == null) {
+                        log.error("A/B test {} has an invalid or unsupported filter pattern for {}. It will not be "
+                            + "matched.", abTest.getId(), entry.getKey());
+                        matchable = false;
+                    } else {
+                        filterPatternRefs.add(patternRef);
+                    }
+                }
+            }
+            filterPatternOffsets.add(filterPatternRefs.size());
+        }
+        return matchable;
+    }
+
+    private int stringRef(String value) {
+        return stringRefs.computeIfAbsent(value, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    private Integer patternRef(String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer ref = patternRefs.get(value);
+        if (ref == null) {
+            FilterPattern pattern = previousPatterns.get(value);
+            if (pattern == null) {
+                try {
+                    pattern = FilterPattern.compile(value, filterMatchingOptions);
+                } catch (PatternSyntaxException e) {
+                    log.debug("Invalid filter pattern {}.", value, e);
+                    return null;
+                } catch (IllegalArgumentException e) {
+                    log.debug(e.getMessage());
+                    return null;
+                }
+            }
+            patterns.add(pattern);
+            ref = patterns.size() - 1;
+            patternRefs.put(value, ref);
+        }
+        return ref;
+    }
+}
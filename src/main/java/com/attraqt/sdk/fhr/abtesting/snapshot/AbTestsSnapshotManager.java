@@ -0,0 +1,161 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.snapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.attraqt.sdk.fhr.abtesting.matching.FilterMatchingOptions;
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the {@link AbTestsSnapshot} of the cached A/B tests up to date.
+ * <p>
+ * Newly fetched A/B tests are passed to {@link AbTestsSnapshotManager#update(List)} on the retrieval thread, before
+ * they are cached. The list is diffed against the current snapshot by A/B test id and a hash of the content of each
+ * A/B test: unchanged A/B tests keep their stamp and compiled filter patterns, and a new generation is only started if
+ * something really changed.
+ * <p>
+ * Requests only {@link AbTestsSnapshotManager#resolve(List) resolve} the snapshot of the list returned by the cache,
+ * which compares it against the current and previous snapshots and does not lock.
+ */
+@Slf4j
+public class AbTestsSnapshotManager {
+
+    private final FilterMatchingOptions filterMatchingOptions;
+    private volatile AbTestsSnapshot current = AbTestsSnapshot.EMPTY;
+    private volatile AbTestsSnapshot previous = AbTestsSnapshot.EMPTY;
+
+    /**
+     * Constructs an {@link AbTestsSnapshotManager} with the default {@link FilterMatchingOptions}.
+     */
+    public AbTestsSnapshotManager() {
+        this(FilterMatchingOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs an {@link AbTestsSnapshotManager}.
+     *
+     * @param filterMatchingOptions The limits applied to the filter patterns of the A/B tests
+     */
+    public AbTestsSnapshotManager(FilterMatchingOptions filterMatchingOptions) {
+        this.filterMatchingOptions = filterMatchingOptions;
+    }
+
+    /**
+     * Returns the snapshot for the A/B tests returned by the cache.
+     * <p>
+     * It is the snapshot built from the given list, if it is the current or the previous one. Otherwise the list was
+     * not passed to {@link AbTestsSnapshotManager#update(List)}, e.g. because the cache returns a copy on every call,
+     * and the current snapshot is returned. Only while no snapshot has been built yet, it is built from the given list.
+     *
+     * @param abTests The A/B tests, as returned by the cache
+     * @return The {@link AbTestsSnapshot} of abTests
+     */
+    public AbTestsSnapshot resolve(List<RunningAbTest> abTests) {
+        AbTestsSnapshot snapshot = current;
+        if (snapshot.isBuiltFrom(abTests)) {
+            return snapshot;
+        }
+        // Requests which read the cache just before it was updated must not flip the snapshot back.
+        AbTestsSnapshot previousSnapshot = previous;
+        if (previousSnapshot.isBuiltFrom(abTests)) {
+            return previousSnapshot;
+        }
+        if (snapshot == AbTestsSnapshot.EMPTY) {
+            return bootstrap(abTests);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the most recently built snapshot.
+     *
+     * @return The current {@link AbTestsSnapshot}
+     */
+    public AbTestsSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Builds the snapshot of newly fetched A/B tests and makes it the current one. The snapshot it replaces is kept as
+     * the previous one, for the requests which still read the list it was built from.
+     *
+     * @param abTests The fetched A/B tests, which are about to be cached
+     * @return The {@link AbTestsSnapshot} of abTests
+     */
+    public synchronized AbTestsSnapshot update(List<RunningAbTest> abTests) {
+        if (current.isBuiltFrom(abTests)) {
+            return current;
+        }
+
+        AbTestsSnapshot snapshot = diff(current, abTests);
+        previous = current;
+        current = snapshot;
+        return snapshot;
+    }
+
+    private synchronized AbTestsSnapshot bootstrap(List<RunningAbTest> abTests) {
+        // The cache was populated before the first retrieval, e.g. by another instance sharing it.
+        return current == AbTestsSnapshot.EMPTY ? update(abTests) : current;
+    }
+
+    private AbTestsSnapshot diff(AbTestsSnapshot snapshot, List<RunningAbTest> abTests) {
+        Map<String, Integer> previousIndexById = new HashMap<>();
+        for (int i = 0; i < snapshot.getTestCount(); i++) {
+            previousIndexById.putIfAbsent(snapshot.getTestId(i), i);
+        }
+
+        long[] testStamps = new long[abTests.size()];
+        long[] testContentHashes = new long[abTests.size()];
+        long nextTestStamp = snapshot.nextTestStamp;
+        Set<String> changedTestIds = new HashSet<>();
+        for (int i = 0; i < abTests.size(); i++) {
+            RunningAbTest abTest = abTests.get(i);
+            Integer previousIndex = previousIndexById.remove(abTest.getId());
+            testContentHashes[i] = AbTestContentHash.of(abTest);
+            if (previousIndex == null || snapshot.testContentHashes[previousIndex] != testContentHashes[i]) {
+                testStamps[i] = nextTestStamp++;
+                changedTestIds.add(abTest.getId());
+            } else {
+                testStamps[i] = snapshot.getTestStamp(previousIndex);
+            }
+        }
+        // Whatever is left was removed.
+        changedTestIds.addAll(previousIndexById.keySet());
+
+        // Comparing the stamps also catches A/B tests being reordered.
+        if (changedTestIds.isEmpty() && Arrays.equals(testStamps, snapshot.testStamps)) {
+            return snapshot.withAbTests(abTests);
+        }
+
+        long generation = snapshot.getGeneration() + 1;
+        log.debug("A/B tests snapshot generation {} built, {} A/B tests changed.", generation, changedTestIds.size());
+
+        return new AbTestsSnapshotCompiler(snapshot, filterMatchingOptions)
+            .compile(generation, abTests, changedTestIds, testStamps, testContentHashes, nextTestStamp);
+    }
+}
@@ -27,8 +27,12 @@ import org.spf4j.test.log.TestLoggers
 import org.spf4j.test.matchers.LogMatchers
 
 import com.attraqt.sdk.fhr.abtesting.caching.AbTestsCache
+import com.attraqt.sdk.fhr.abtesting.caching.InMemorySharedSnapshotStore
+import com.attraqt.sdk.fhr.abtesting.caching.SharedAbTestsCache
 
 import com.attraqt.sdk.fhr.abtesting.model.SchedulingOptions
+import com.attraqt.sdk.fhr.abtesting.retrieval.BasicAuthenticationAbTestsFetcher
+import com.attraqt.sdk.fhr.abtesting.retrieval.HttpClientAbTestsFetcher
 import com.attraqt.sdk.fhr.abtesting.retrieval.RunningAbTestsFetcher
 import com.attraqt.sdk.fhr.abtesting.scheduling.AbTestsRetrievalScheduler
 
@@ -93,7 +97,7 @@ class AbTestingBuilderTests extends Specification {
         abTesting.shutdown()
 
         then:
-        1 * schedulerMock.start(abTestsCache,_, _)
+        1 * schedulerMock.start(abTestsCache,_, _, _)
     }
 
     def "should pass the provided RunningAbTestsFetcher to AbTestsRetrievalScheduler where provided"() {
@@ -117,7 +121,73 @@ class AbTestingBuilderTests extends Specification {
         abTesting.shutdown()
 
         then:
-        1 * schedulerMock.start(_,runningAbTestsFetcher, _)
+        1 * schedulerMock.start(_,runningAbTestsFetcher, _, _)
+    }
+
+    def "should reject a SharedAbTestsCache whose lease is not longer than the cacheExpireTimeMinutes"() {
+        given:
+        SharedAbTestsCache sharedAbTestsCache = SharedAbTestsCache.builder()
+                .store(new InMemorySharedSnapshotStore())
+                .leaseDurationInSeconds(600L)
+                .build()
+        def builder = AbTesting.builder()
+                .abTestsServerUrl("url")
+                .username("username")
+                .password("password")
+                .cacheExpireTimeMinutes(15)
+                .abTestsCache(sharedAbTestsCache)
+
+        when:
+        builder.build()
+
+        then:
+        def exception = thrown IllegalArgumentException
+        exception.message ==
+                "The lease duration of 600 seconds must be longer than the refresh interval of 900 seconds."
+    }
+
+    def "should use the Jersey based RunningAbTestsFetcher by default if Jersey is available"() {
+        given:
+        AbTestsRetrievalScheduler schedulerMock = Mock()
+
+        AbTesting abTesting =
+                AbTesting.builder()
+                        .abTestsServerUrl("url")
+                        .username("username")
+                        .password("password")
+                        .abTestsRetrievalScheduler(schedulerMock)
+                        .build()
+
+        when:
+        abTesting.start()
+        abTesting.shutdown()
+
+        then:
+        1 * schedulerMock.start(_, { it instanceof BasicAuthenticationAbTestsFetcher }, _, _)
+    }
+
+    def "should fall back to the JDK HttpClient based RunningAbTestsFetcher if Jersey is not fully available"() {
+        given:
+        ClassLoader classLoader = new JerseylessClassLoader(AbTesting.classLoader, hiddenPackages)
+        Class<?> abTestingClass = classLoader.loadClass(AbTesting.name)
+
+        when:
+        def abTesting = abTestingClass.getMethod("builder").invoke(null)
+                .abTestsServerUrl("url")
+                .username("username")
+                .password("password")
+                .build()
+        def runningAbTestsFetcher = abTesting.@runningAbTestsFetcher
+
+        then:
+        runningAbTestsFetcher.class.name == HttpClientAbTestsFetcher.name
+        runningAbTestsFetcher.class.classLoader.is(classLoader)
+
+        where:
+        hiddenPackages << [
+                ["org.glassfish.jersey."],
+                ["org.glassfish.jersey.jackson.", "org.glassfish.jersey.inject.hk2."]
+        ]
     }
 
 
@@ -151,7 +221,7 @@ class AbTestingBuilderTests extends Specification {
         then:
         belowMinimumLogMessageAssert.assertObservation()
         noMinimumLogMessageAssert.assertObservation()
-        1 * schedulerMock.start(_, _, new SchedulingOptions(expectedMinutes, 1, TimeUnit.MINUTES))
+        1 * schedulerMock.start(_, _, new SchedulingOptions(expectedMinutes, 1, TimeUnit.MINUTES), _)
 
         where:
         specifiedMinutes | expectedMinutes       | belowMinimumLogMessage   | noMinimumLogMessage
@@ -182,4 +252,36 @@ class AbTestingBuilderTests extends Specification {
     private static LogAssert setupLogExpectation(Level logLevel, String message) {
         TestLoggers.sys().expect(AbTesting.class.getName(), logLevel, LogMatchers.hasMessage(message))
     }
+
+    /**
+     * Loads the SDK classes itself, so that they see a classpath without the hidden Jersey packages, as when the jersey
+     * feature of the library is not requested or only some of its modules are present. Everything else is delegated.
+     */
+    private static class JerseylessClassLoader extends ClassLoader {
+
+        private final List<String> hiddenPackages
+
+        JerseylessClassLoader(ClassLoader parent, List<String> hiddenPackages) {
+            super(parent)
+            this.hiddenPackages = hiddenPackages
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (hiddenPackages.any { name.startsWith(it) }) {
+                throw new ClassNotFoundException(name)
+            }
+            if (!name.startsWith("com.attraqt.sdk.fhr.abtesting.")) {
+                return super.loadClass(name, resolve)
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loadedClass = findLoadedClass(name)
+                if (loadedClass == null) {
+                    byte[] bytes = parent.getResourceAsStream(name.replace('.', '/') + ".class").bytes
+                    loadedClass = defineClass(name, bytes, 0, bytes.length)
+                }
+                return loadedClass
+            }
+        }
+    }
 }
@@ -21,7 +21,12 @@ package com.attraqt.sdk.fhr.abtesting
 
 import com.attraqt.sdk.fhr.abtesting.caching.AbTestsCache
 
+import com.attraqt.sdk.fhr.abtesting.events.AssignmentEvent
+import com.attraqt.sdk.fhr.abtesting.events.AssignmentEventStream
+import com.attraqt.sdk.fhr.abtesting.exposure.ExposureCounters
 import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+import com.attraqt.sdk.fhr.abtesting.model.WarmUpOptions
+import com.attraqt.sdk.fhr.abtesting.model.WarmUpResult
 import com.attraqt.sdk.fhr.abtesting.scheduling.AbTestsRetrievalScheduler
 
 import spock.lang.Specification
@@ -92,6 +97,177 @@ class AbTestingTests extends Specification {
         result == ["param": ["value"], "fh_abtests": ["testId:A"]]
     }
 
+    def "should replace the fh_abtests parameter and keep the rest of the URI (URI)"() {
+        given:
+        AbTestsCache cache = Mock()
+        AbTesting abTesting = createAbTestingWithCache(cache)
+        abTesting.start()
+
+        RunningAbTest runningAbTest =
+                new RunningAbTest(
+                        "testId",
+                        buildAbTestVariants(),
+                        ["param": ["value"]]
+                )
+
+        when:
+        def result = abTesting.appendAbTestsParameter(
+                "sessionId", URI.create("http://fas/query?param=value&fh_abtests=old&flag#fragment"))
+        abTesting.shutdown()
+
+        then:
+        1 * cache.getAbTests() >> [runningAbTest]
+        result == URI.create("http://fas/query?param=value&flag&fh_abtests=testId:A#fragment")
+    }
+
+    def "should return the given URI if no A/B tests apply (URI)"() {
+        given:
+        AbTestsCache cache = Mock()
+        AbTesting abTesting = createAbTestingWithCache(cache)
+        abTesting.start()
+
+        URI uri = URI.create("http://fas/query?param=value")
+
+        when:
+        def result = abTesting.appendAbTestsParameter("sessionId", uri)
+        abTesting.shutdown()
+
+        then:
+        1 * cache.getAbTests() >> []
+        result.is(uri)
+    }
+
+    def "should publish and count only the assignments of the matched A/B tests with a selected variant"() {
+        given:
+        List<AssignmentEvent> events = []
+        AssignmentEventStream assignmentEventStream =
+                AssignmentEventStream.builder().consumer({ batch -> events.addAll(batch) }).build()
+        ExposureCounters exposureCounters = ExposureCounters.builder().build()
+
+        AbTestsCache cache = Mock()
+        cache.getAbTests() >> [
+                new RunningAbTest("testId", buildAbTestVariants(), ["param": ["value"]]),
+                new RunningAbTest("filteredOutId", buildAbTestVariants(), ["param": ["notValue"]]),
+                new RunningAbTest(
+                        "uncoveredId",
+                        [new RunningAbTest.RunningAbTestVariant("A", 0),
+                         new RunningAbTest.RunningAbTestVariant("B", 0)],
+                        ["param": ["value"]])
+        ]
+
+        AbTesting abTesting = AbTesting.builder()
+                .abTestsServerUrl("dummyUrl")
+                .username("dummy username")
+                .password("password")
+                .abTestsRetrievalScheduler(Mock(AbTestsRetrievalScheduler))
+                .abTestsCache(cache)
+                .assignmentEventStream(assignmentEventStream)
+                .exposureCounters(exposureCounters)
+                .build()
+        abTesting.start()
+
+        when:
+        List<String> results = (0..<10).collect {
+            abTesting.appendAbTestsParameter("sessionId" + it, ["param": ["value"]])["fh_abtests"][0]
+        }
+        def exposureSnapshot = exposureCounters.snapshot()
+        abTesting.shutdown()
+
+        then:
+        results.every { it ==~ /testId:[AB]/ }
+        assignmentEventStream.publishedCount == 10
+        events.size() == 10
+        events*.testId.unique() == ["testId"]
+        events*.variantId == results.collect { it.substring("testId:".length()) }
+        exposureSnapshot.tests*.testId == ["testId", "filteredOutId", "uncoveredId"]
+        exposureSnapshot.tests*.totalCount == [10, 0, 0]
+        exposureSnapshot.tests[0].variants*.count.sum() == 10
+    }
+
+    def "should warm up newly fetched A/B tests within the WarmUpOptions without recording the assignments"() {
+        given:
+        List<AssignmentEvent> events = []
+        AssignmentEventStream assignmentEventStream =
+                AssignmentEventStream.builder().consumer({ batch -> events.addAll(batch) }).build()
+        ExposureCounters exposureCounters = ExposureCounters.builder().build()
+        List<RunningAbTest> abTests = [new RunningAbTest("testId", buildAbTestVariants(), ["param": ["val.*"]])]
+
+        AbTestsCache cache = Mock()
+        cache.getAbTests() >> abTests
+
+        AbTesting abTesting = AbTesting.builder()
+                .abTestsServerUrl("dummyUrl")
+                .username("dummy username")
+                .password("password")
+                .abTestsRetrievalScheduler(Mock(AbTestsRetrievalScheduler))
+                .abTestsCache(cache)
+                .assignmentEventStream(assignmentEventStream)
+                .exposureCounters(exposureCounters)
+                .warmUpOptions(WarmUpOptions.builder()
+                        .maxIterations(maxIterations)
+                        .timeBudgetInMillis(timeBudgetInMillis)
+                        .build())
+                .build()
+        abTesting.start()
+
+        when:
+        int iterations = abTesting.prepare(abTests)
+        int repeatedIterations = abTesting.prepare(abTests)
+        def result = abTesting.appendAbTestsParameter("sessionId", ["param": ["value"]])
+        def exposureSnapshot = exposureCounters.snapshot()
+        abTesting.shutdown()
+
+        then:
+        iterations == expectedIterations
+        repeatedIterations == -1
+        result["fh_abtests"][0] ==~ /testId:[AB]/
+        assignmentEventStream.publishedCount == 1
+        events.size() == 1
+        exposureSnapshot.tests*.totalCount == [1]
+
+        where:
+        maxIterations     | timeBudgetInMillis | expectedIterations
+        25                | 60_000L            | 25
+        Integer.MAX_VALUE | 0L                 | 0
+    }
+
+    def "should build the snapshot of newly fetched A/B tests before they are cached even without WarmUpOptions"() {
+        given:
+        AbTestsCache cache = Mock()
+        AbTesting abTesting = createAbTestingWithCache(cache)
+        abTesting.start()
+
+        when:
+        int iterations = abTesting.prepare([new RunningAbTest("testId", buildAbTestVariants(), ["param": ["value"]])])
+        def result = abTesting.appendAbTestsParameter("sessionId", ["param": ["value"]])
+        abTesting.shutdown()
+
+        then:
+        iterations == -1
+        // A list which was not passed to prepare is resolved to the prepared snapshot rather than built.
+        1 * cache.getAbTests() >> [new RunningAbTest("testId", buildAbTestVariants(), ["param": ["notValue"]])]
+        result == ["param": ["value"], "fh_abtests": ["testId:A"]]
+    }
+
+    def "should return the last warm-up result of the scheduler"() {
+        given:
+        AbTestsRetrievalScheduler retrievalScheduler = Mock()
+        WarmUpResult warmUpResult = new WarmUpResult(25, 3)
+        AbTesting abTesting = AbTesting.builder()
+                .abTestsServerUrl("dummyUrl")
+                .username("dummy username")
+                .password("password")
+                .abTestsRetrievalScheduler(retrievalScheduler)
+                .build()
+
+        when:
+        def result = abTesting.lastWarmUpResult
+
+        then:
+        1 * retrievalScheduler.getLastWarmUpResult() >> warmUpResult
+        result.is(warmUpResult)
+    }
+
     def "should split the traffic within the tolerance of a specified percentage difference tolerance"() {
         given:
 
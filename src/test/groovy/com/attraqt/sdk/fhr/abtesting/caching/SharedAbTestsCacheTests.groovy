@@ -0,0 +1,167 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.caching
+
+import java.util.concurrent.TimeUnit
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+import com.attraqt.sdk.fhr.abtesting.retrieval.RunningAbTestsFetcher
+
+import spock.lang.Specification
+
+class SharedAbTestsCacheTests extends Specification {
+
+    private long now = 0
+    private SharedSnapshotStore store = new InMemorySharedSnapshotStore({ now })
+    private RunningAbTestsFetcher upstream = Mock()
+
+    def "should only fetch from upstream on the lease holder and share the A/B tests with the other nodes"() {
+        given:
+        SharedAbTestsCache leader = SharedAbTestsCache.builder().store(store).nodeId("leader").build()
+        SharedAbTestsCache follower = SharedAbTestsCache.builder().store(store).nodeId("follower").build()
+        RunningAbTestsFetcher leaderFetcher = leader.wrap(upstream, 5, TimeUnit.MINUTES)
+        RunningAbTestsFetcher followerFetcher = follower.wrap(upstream, 5, TimeUnit.MINUTES)
+
+        when:
+        List<RunningAbTest> leaderAbTests = leaderFetcher.runningAbTests
+        List<RunningAbTest> followerAbTests = followerFetcher.runningAbTests
+        follower.cacheAbTests(followerAbTests)
+
+        then:
+        1 * upstream.getRunningAbTests() >> [abTest("test1")]
+        leader.leaseHolder
+        !follower.leaseHolder
+        store.version == 1
+        followerAbTests == leaderAbTests
+
+        when: "the shared snapshot has not changed"
+        List<RunningAbTest> unchangedAbTests = followerFetcher.runningAbTests
+
+        then:
+        0 * upstream.getRunningAbTests()
+        unchangedAbTests.is(followerAbTests)
+
+        when: "the leader fetches the same A/B tests again"
+        leaderFetcher.runningAbTests
+
+        then:
+        1 * upstream.getRunningAbTests() >> [abTest("test1")]
+        store.version == 1
+    }
+
+    def "should hand the lease over when the lease holder releases it"() {
+        given:
+        SharedAbTestsCache first = SharedAbTestsCache.builder().store(store).nodeId("first").build()
+        SharedAbTestsCache second = SharedAbTestsCache.builder().store(store).nodeId("second").build()
+        first.wrap({ [abTest("test1")] } as RunningAbTestsFetcher, 5, TimeUnit.MINUTES).runningAbTests
+
+        when:
+        first.releaseLease()
+        List<RunningAbTest> abTests = second.wrap(upstream, 5, TimeUnit.MINUTES).runningAbTests
+
+        then:
+        1 * upstream.getRunningAbTests() >> [abTest("test2")]
+        second.leaseHolder
+        abTests == [abTest("test2")]
+        store.version == 2
+    }
+
+    def "should not fetch from upstream on the other nodes while the first snapshot is not published"() {
+        given:
+        store.tryAcquireLease("leader", 60_000)
+        SharedAbTestsCache follower =
+                SharedAbTestsCache.builder().store(store).nodeId("follower").firstSnapshotWaitInSeconds(0L).build()
+
+        when:
+        follower.wrap(upstream, 5, TimeUnit.MINUTES).runningAbTests
+
+        then:
+        thrown IllegalStateException
+        0 * upstream.getRunningAbTests()
+        !follower.leaseHolder
+    }
+
+    def "should wait for the first snapshot to be published by the lease holder"() {
+        given:
+        store.tryAcquireLease("leader", 60_000)
+        SharedAbTestsCache leader = SharedAbTestsCache.builder().store(store).nodeId("leader").build()
+        SharedAbTestsCache follower =
+                SharedAbTestsCache.builder().store(store).nodeId("follower").firstSnapshotWaitInSeconds(5L).build()
+        Thread publisher = Thread.start {
+            Thread.sleep(300)
+            leader.wrap({ [abTest("test1")] } as RunningAbTestsFetcher, 5, TimeUnit.MINUTES).runningAbTests
+        }
+
+        when:
+        List<RunningAbTest> abTests = follower.wrap(upstream, 5, TimeUnit.MINUTES).runningAbTests
+        publisher.join()
+
+        then:
+        0 * upstream.getRunningAbTests()
+        abTests == [abTest("test1")]
+    }
+
+    def "should derive the lease duration from the refresh interval unless it is provided"() {
+        given:
+        SharedAbTestsCache leader = SharedAbTestsCache.builder().store(store).nodeId("leader").build()
+
+        when:
+        leader.wrap({ [abTest("test1")] } as RunningAbTestsFetcher, 1, TimeUnit.SECONDS).runningAbTests
+        now = 1999
+
+        then:
+        store.tryAcquireLease("other", 1000) == -1
+
+        when:
+        now = 2000
+
+        then:
+        store.tryAcquireLease("other", 1000) > 0
+    }
+
+    def "should reject a lease duration which is not longer than the refresh interval"() {
+        given:
+        SharedAbTestsCache cache = SharedAbTestsCache.builder().store(store).leaseDurationInSeconds(600L).build()
+
+        when:
+        cache.wrap(upstream, 15, TimeUnit.MINUTES)
+
+        then:
+        def exception = thrown IllegalArgumentException
+        exception.message ==
+                "The lease duration of 600 seconds must be longer than the refresh interval of 900 seconds."
+    }
+
+    def "should not publish with the fencing token of an expired lease"() {
+        given:
+        long staleToken = store.tryAcquireLease("first", 1000)
+        now = 1000
+        long token = store.tryAcquireLease("second", 1000)
+
+        expect:
+        token > staleToken
+        store.publish(staleToken, [1] as byte[]) == -1
+        store.publish(token, [1] as byte[]) == 1
+    }
+
+    private static RunningAbTest abTest(String id) {
+        new RunningAbTest(id, [new RunningAbTest.RunningAbTestVariant("A", 100)], ["param": ["value"]])
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.client
+
+import jakarta.ws.rs.client.ClientRequestContext
+
+import com.attraqt.sdk.fhr.abtesting.AbTesting
+
+import spock.lang.Specification
+
+class AbTestsClientRequestFilterTests extends Specification {
+
+    def "should update the request URI from the session id request property"() {
+        given:
+        AbTesting abTesting = Mock()
+        ClientRequestContext requestContext = Mock()
+        URI uri = URI.create("http://fas/query?param=value")
+        URI abTestsUri = URI.create("http://fas/query?param=value&fh_abtests=testId:A")
+
+        when:
+        new AbTestsClientRequestFilter(abTesting).filter(requestContext)
+
+        then:
+        1 * requestContext.getProperty(AbTestsClientRequestFilter.DEFAULT_SESSION_ID_PROPERTY) >> "sessionId"
+        1 * requestContext.getUri() >> uri
+        1 * abTesting.appendAbTestsParameter("sessionId", uri) >> abTestsUri
+        1 * requestContext.setUri(abTestsUri)
+    }
+
+    def "should leave the request untouched if it has no session id"() {
+        given:
+        AbTesting abTesting = Mock()
+        ClientRequestContext requestContext = Mock()
+
+        when:
+        new AbTestsClientRequestFilter(abTesting, "sessionIdProperty").filter(requestContext)
+
+        then:
+        1 * requestContext.getProperty("sessionIdProperty") >> null
+        0 * abTesting._
+        0 * requestContext.setUri(_)
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.events
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshot
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshotManager
+
+import spock.lang.Specification
+
+class AssignmentEventStreamTests extends Specification {
+
+    def "should deliver the published assignments resolved to test and variant ids on shutdown"() {
+        given:
+        List<AssignmentEvent> received = []
+        AssignmentEventConsumer consumer = { events -> received.addAll(events) }
+        AssignmentEventStream stream = AssignmentEventStream.builder().consumer(consumer).build()
+        int sessionHash = AssignmentEventStream.hashSessionId("sessionId")
+
+        when:
+        stream.start()
+        stream.publish(sessionHash, snapshot(), 1, 0)
+        stream.publish(sessionHash, snapshot(), 0, 1)
+        stream.shutdown()
+
+        then:
+        received*.testId == ["test2", "test1"]
+        received*.variantId == ["C", "B"]
+        received.every { it.sessionHash == sessionHash }
+        stream.publishedCount == 2
+        stream.droppedCount == 0
+    }
+
+    def "should drop and count the assignments which do not fit in the ring buffer"() {
+        given:
+        AssignmentEventConsumer consumer = Mock()
+        AssignmentEventStream stream = AssignmentEventStream.builder().consumer(consumer).capacity(4).build()
+
+        when:
+        6.times { stream.publish(it, snapshot(), 0, 0) }
+        stream.start()
+        stream.shutdown()
+
+        then:
+        1 * consumer.consume({ it.size() == 4 })
+        stream.publishedCount == 4
+        stream.droppedCount == 2
+    }
+
+    def "should not record the assignments of sessions which are not sampled"() {
+        given:
+        AssignmentEventConsumer consumer = Mock()
+        AssignmentEventStream stream = AssignmentEventStream.builder().consumer(consumer).samplingRate(0.0).build()
+
+        when:
+        stream.publish(AssignmentEventStream.hashSessionId("sessionId"), snapshot(), 0, 0)
+        stream.start()
+        stream.shutdown()
+
+        then:
+        0 * consumer.consume(_)
+        stream.sampledOutCount == 1
+    }
+
+    def "should reject a batch size or drain interval which would keep the ring buffer from being drained"() {
+        when:
+        AssignmentEventStream.builder()
+                .consumer(Mock(AssignmentEventConsumer))
+                .batchSize(batchSize)
+                .drainIntervalInMillis(drainIntervalInMillis)
+                .build()
+
+        then:
+        def exception = thrown IllegalArgumentException
+        exception.message == message
+
+        where:
+        batchSize | drainIntervalInMillis | message
+        0         | null                  | "batchSize must be at least 1."
+        null      | 0L                    | "drainIntervalInMillis must be positive."
+    }
+
+    def "should hash a null session id like the string null"() {
+        expect:
+        AssignmentEventStream.hashSessionId(null) == AssignmentEventStream.hashSessionId("null")
+    }
+
+    private static AbTestsSnapshot snapshot() {
+        List<RunningAbTest> abTests =
+                [new RunningAbTest(
+                        "test1",
+                        [new RunningAbTest.RunningAbTestVariant("A", 50),
+                         new RunningAbTest.RunningAbTestVariant("B", 50)],
+                        [:]),
+                 new RunningAbTest(
+                         "test2",
+                         [new RunningAbTest.RunningAbTestVariant("C", 100)],
+                         [:])]
+
+        new AbTestsSnapshotManager().update(abTests)
+    }
+}
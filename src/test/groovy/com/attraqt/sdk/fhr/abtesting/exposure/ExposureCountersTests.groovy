@@ -0,0 +1,129 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.exposure
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshot
+import com.attraqt.sdk.fhr.abtesting.snapshot.AbTestsSnapshotManager
+
+import spock.lang.Specification
+
+class ExposureCountersTests extends Specification {
+
+    def "should count the assignments per test and variant against the configured weights"() {
+        given:
+        ExposureCounters exposureCounters = ExposureCounters.builder().build()
+        AbTestsSnapshot snapshot = new AbTestsSnapshotManager().update([abTest("test1", 50), abTest("test2", 50)])
+
+        when:
+        3.times { exposureCounters.record(snapshot, 0, 0) }
+        exposureCounters.record(snapshot, 0, 1)
+        exposureCounters.record(snapshot, 1, 0)
+        def exposureSnapshot = exposureCounters.snapshot()
+
+        then:
+        !exposureSnapshot.rolledOver
+        exposureSnapshot.tests*.testId == ["test1", "test2"]
+        exposureSnapshot.tests[0].variants*.count == [3, 1]
+        exposureSnapshot.tests[0].variants*.weight == [50, 50]
+        exposureSnapshot.tests[0].totalCount == 4
+        exposureSnapshot.tests[0].chiSquared == 1.0d
+        exposureSnapshot.tests[1].totalCount == 1
+    }
+
+    def "should only reset the counters of the A/B tests which changed in a new generation"() {
+        given:
+        ExposureCounters exposureCounters = ExposureCounters.builder().build()
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        AbTestsSnapshot firstSnapshot = snapshotManager.update([abTest("test1", 50), abTest("test2", 50)])
+
+        when:
+        exposureCounters.record(firstSnapshot, 0, 0)
+        exposureCounters.record(firstSnapshot, 1, 0)
+        AbTestsSnapshot secondSnapshot = snapshotManager.update([abTest("test1", 50), abTest("test2", 90)])
+        exposureCounters.record(secondSnapshot, 0, 1)
+
+        then:
+        secondSnapshot.generation == firstSnapshot.generation + 1
+        exposureCounters.snapshot().tests*.totalCount == [2, 0]
+        exposureCounters.snapshot().tests[1].variants*.weight == [90, 10]
+    }
+
+    def "should export the counters of every rolled-over generation including their late assignments"() {
+        given:
+        List<ExposureSnapshot> exported = []
+        ExposureCounters exposureCounters = ExposureCounters.builder().exporter({ exported << it }).build()
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        AbTestsSnapshot firstSnapshot = snapshotManager.update([abTest("test1", 50), abTest("test2", 50)])
+
+        when:
+        exposureCounters.record(firstSnapshot, 0, 0)
+        exposureCounters.record(firstSnapshot, 1, 0)
+        AbTestsSnapshot secondSnapshot = snapshotManager.update([abTest("test1", 60), abTest("test2", 50)])
+        exposureCounters.record(secondSnapshot, 0, 1)
+        exposureCounters.record(firstSnapshot, 0, 1)
+        AbTestsSnapshot thirdSnapshot = snapshotManager.update([abTest("test1", 70), abTest("test2", 50)])
+        exposureCounters.record(thirdSnapshot, 0, 0)
+        exposureCounters.export()
+
+        then:
+        exported.size() == 3
+        exported[0].rolledOver
+        exported[0].tests*.testId == ["test1"]
+        exported[0].tests[0].variants*.weight == [50, 50]
+        exported[0].tests[0].variants*.count == [1, 1]
+        exported[1].rolledOver
+        exported[1].tests*.testId == ["test1"]
+        exported[1].tests[0].variants*.weight == [60, 40]
+        exported[1].tests[0].variants*.count == [0, 1]
+        !exported[2].rolledOver
+        exported[2].tests*.totalCount == [1, 1]
+
+        when:
+        exposureCounters.export()
+
+        then:
+        exported.size() == 4
+        !exported[3].rolledOver
+    }
+
+    def "should reject an export interval which is not positive"() {
+        when:
+        ExposureCounters.builder()
+                .exporter(Mock(ExposureExporter))
+                .exportIntervalInSeconds(exportIntervalInSeconds)
+                .build()
+
+        then:
+        def exception = thrown IllegalArgumentException
+        exception.message == "exportIntervalInSeconds must be positive."
+
+        where:
+        exportIntervalInSeconds << [0L, -1L]
+    }
+
+    private static RunningAbTest abTest(String id, int firstVariantWeight) {
+        new RunningAbTest(
+                id,
+                [new RunningAbTest.RunningAbTestVariant("A", firstVariantWeight),
+                 new RunningAbTest.RunningAbTestVariant("B", 100 - firstVariantWeight)],
+                [:])
+    }
+}
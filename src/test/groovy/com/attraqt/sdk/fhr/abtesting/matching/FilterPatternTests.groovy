@@ -0,0 +1,96 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.matching
+
+import java.util.regex.Pattern
+import java.util.regex.PatternSyntaxException
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class FilterPatternTests extends Specification {
+
+    private static final List<String> VALUES = ["", "a", "ab", "abc", "aab", "b", "x1", "a.b", "a\n", "a\r\n", "-",
+                                                "12", "//catalog01/en_GB/categories<{catalog01_womens}"]
+
+    @Unroll
+    def "should match like java.util.regex for #pattern"() {
+        given:
+        FilterPattern filterPattern = FilterPattern.compile(pattern, FilterMatchingOptions.DEFAULT)
+
+        expect:
+        filterPattern.linear
+        VALUES.every { filterPattern.matches(it) == Pattern.compile(pattern).matcher(it).matches() }
+        Pattern.compile(pattern).matcher(filterPattern.sample).matches()
+
+        where:
+        pattern << ['a', 'ab|a', 'a*b', '(?:a|b)+', '[^a]', '[a-c]{1,3}', 'a{2,}b', '\\d+', '\\w\\.\\w', 'a$',
+                    '^ab?c?$', '.*', 'a.*?', '[\\d-]+', '\\Qa.b\\E', 'x\\d?', '(?<name>a)b',
+                    '//catalog01/en_GB/categories<\\{catalog01_.*\\}']
+    }
+
+    def "should match pathological patterns in linear time"() {
+        given:
+        FilterPattern filterPattern = FilterPattern.compile('(a+)+b', FilterMatchingOptions.DEFAULT)
+
+        expect:
+        filterPattern.linear
+        !filterPattern.matches("a" * 100_000)
+    }
+
+    def "should fall back to java.util.regex for unsupported patterns within the step budget"() {
+        given:
+        FilterPattern filterPattern =
+                FilterPattern.compile('(a+)+\\1b', FilterMatchingOptions.builder().maxMatchSteps(10_000L).build())
+
+        expect:
+        !filterPattern.linear
+        filterPattern.matches("aab")
+        !filterPattern.matches("a" * 40)
+    }
+
+    def "should reject unsupported patterns if requested"() {
+        when:
+        FilterPattern.compile('(?=a)a', FilterMatchingOptions.builder().rejectUnsupportedPatterns(true).build())
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should not accept invalid patterns"() {
+        when:
+        FilterPattern.compile("[", FilterMatchingOptions.DEFAULT)
+
+        then:
+        thrown(PatternSyntaxException)
+    }
+
+    def "should not match values which exceed the limits"() {
+        given:
+        FilterMatchingOptions lengthOptions = FilterMatchingOptions.builder().maxInputLength(5).build()
+        FilterMatchingOptions stepsOptions = FilterMatchingOptions.builder().maxMatchSteps(20L).build()
+
+        expect:
+        FilterPattern.compile("a.*", lengthOptions).matches("abcde")
+        !FilterPattern.compile("a.*", lengthOptions).matches("abcdef")
+        FilterPattern.compile("a.*", stepsOptions).matches("ab")
+        !FilterPattern.compile("a.*", stepsOptions).matches("a" * 20)
+    }
+}
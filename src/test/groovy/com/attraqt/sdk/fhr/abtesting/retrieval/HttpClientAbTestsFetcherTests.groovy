@@ -0,0 +1,128 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.retrieval
+
+import java.net.http.HttpTimeoutException
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+
+import spock.lang.Specification
+
+class HttpClientAbTestsFetcherTests extends Specification {
+    private static final String AB_TESTS_PATH = "/config/running/ab-tests"
+
+    HttpServer server
+    List<HttpExchange> exchanges = []
+    int status = 200
+    String body = ""
+    long delayInMillis = 0
+
+    def setup() {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext(AB_TESTS_PATH, { HttpExchange exchange ->
+            exchanges << exchange
+            Thread.sleep(delayInMillis)
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8)
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        })
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop(0)
+        server.executor.shutdownNow()
+    }
+
+    def "should parse the running A/B tests from the response"() {
+        given:
+        body = """[{"id": "testId",
+                    "variations": [{"id": "A", "weight": 60}, {"id": "B", "weight": 40}],
+                    "filters": {"param": ["value", "val.*"]},
+                    "unknown": true}]"""
+
+        when:
+        List<RunningAbTest> abTests = createFetcher(1).getRunningAbTests()
+
+        then:
+        abTests == [new RunningAbTest(
+                "testId",
+                [new RunningAbTest.RunningAbTestVariant("A", 60), new RunningAbTest.RunningAbTestVariant("B", 40)],
+                ["param": ["value", "val.*"]])]
+    }
+
+    def "should send the credentials as a basic authorization header"() {
+        given:
+        body = "[]"
+
+        when:
+        createFetcher(1).getRunningAbTests()
+
+        then:
+        exchanges.size() == 1
+        exchanges[0].requestMethod == "GET"
+        exchanges[0].requestHeaders.getFirst("Authorization") ==
+                "Basic " + "username:password".bytes.encodeBase64().toString()
+        exchanges[0].requestHeaders.getFirst("Accept") == "application/json"
+    }
+
+    def "should throw an IllegalStateException if the response status is not successful"() {
+        given:
+        status = responseStatus
+        body = "[]"
+
+        when:
+        createFetcher(1).getRunningAbTests()
+
+        then:
+        def exception = thrown IllegalStateException
+        exception.message == "FHR A/B Tests Service responded with status $responseStatus."
+
+        where:
+        responseStatus << [301, 401, 404, 500]
+    }
+
+    def "should throw an UncheckedIOException if the response is not received within the read timeout"() {
+        given:
+        delayInMillis = 3000
+        body = "[]"
+
+        when:
+        createFetcher(1).getRunningAbTests()
+
+        then:
+        def exception = thrown UncheckedIOException
+        exception.cause instanceof HttpTimeoutException
+    }
+
+    private HttpClientAbTestsFetcher createFetcher(int readTimeoutInSeconds) {
+        new HttpClientAbTestsFetcher(
+                "username",
+                "password",
+                URI.create("http://${server.address.hostString}:${server.address.port}$AB_TESTS_PATH"),
+                1,
+                readTimeoutInSeconds)
+    }
+}
@@ -107,5 +107,76 @@ class AbTestsRetrievalSchedulerTests extends Specification {
         scheduler.shutdown()
     }
 
+    def "should warm up newly fetched A/B tests before passing them to abTestsCache"() {
+        given:
+        def cacheAbTestsCalled = false
+
+        AbTestsCache abTestsCache = Mock()
+        AbTestsWarmUp warmUp = Mock()
+
+        RunningAbTestsFetcher runningAbTestsFetcher = Stub()
+        List<RunningAbTest> runningAbTests = [new RunningAbTest(null, null, null)]
+        runningAbTestsFetcher.getRunningAbTests() >> runningAbTests
+
+        def conditions = new PollingConditions(timeout: 1, initialDelay: 0.1, factor: 0.1)
+
+        AbTestsRetrievalScheduler scheduler = new AbTestsRetrievalScheduler()
+
+        when:
+        scheduler.start(
+                abTestsCache,
+                runningAbTestsFetcher,
+                new SchedulingOptions(1, 5, TimeUnit.SECONDS),
+                warmUp)
+
+        conditions.eventually {
+            cacheAbTestsCalled // Wait until abTestsCache.cacheAbTests has been called.
+        }
+
+        then:
+        1 * warmUp.warmUp(runningAbTests) >> 42
+
+        then:
+        1 * abTestsCache.cacheAbTests(runningAbTests) >> { cacheAbTestsCalled = true }
+        scheduler.lastWarmUpResult.iterations == 42
+        scheduler.lastWarmUpResult.timeInMillis >= 0
+
+        cleanup:
+        scheduler.shutdown()
+    }
+
+    def "should not record a warm-up which did not run"() {
+        given:
+        def cacheAbTestsCalled = false
+
+        AbTestsCache abTestsCache = Mock()
+        AbTestsWarmUp warmUp = Mock()
+
+        RunningAbTestsFetcher runningAbTestsFetcher = Stub()
+        List<RunningAbTest> runningAbTests = [new RunningAbTest(null, null, null)]
+        runningAbTestsFetcher.getRunningAbTests() >> runningAbTests
+
+        def conditions = new PollingConditions(timeout: 1, initialDelay: 0.1, factor: 0.1)
+
+        AbTestsRetrievalScheduler scheduler = new AbTestsRetrievalScheduler()
 
+        when:
+        scheduler.start(
+                abTestsCache,
+                runningAbTestsFetcher,
+                new SchedulingOptions(1, 5, TimeUnit.SECONDS),
+                warmUp)
+
+        conditions.eventually {
+            cacheAbTestsCalled // Wait until abTestsCache.cacheAbTests has been called.
+        }
+
+        then:
+        1 * warmUp.warmUp(runningAbTests) >> -1
+        1 * abTestsCache.cacheAbTests(runningAbTests) >> { cacheAbTestsCalled = true }
+        scheduler.lastWarmUpResult == null
+
+        cleanup:
+        scheduler.shutdown()
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * FHR A/B Testing SDK. Copyright (C) 2020 Attraqt Limited
+ *
+ * This file is part of the FHR A/B Testing SDK.
+ *
+ * The FHR A/B Testing SDK is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The FHR A/B Testing SDK is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with the FHR A/B Testing SDK.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.attraqt.sdk.fhr.abtesting.snapshot
+
+import com.attraqt.sdk.fhr.abtesting.model.RunningAbTest
+
+import spock.lang.Specification
+
+class AbTestsSnapshotManagerTests extends Specification {
+
+    def "should return the same snapshot as long as the cache returns the same list"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        List<RunningAbTest> abTests = [abTest("test1", "value")]
+
+        expect:
+        snapshotManager.resolve(abTests).is(snapshotManager.resolve(abTests))
+    }
+
+    def "should keep the generation and compiled A/B tests if a refresh did not change anything"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+
+        when:
+        AbTestsSnapshot first = snapshotManager.update([abTest("test1", "value"), abTest("test2", "value")])
+        AbTestsSnapshot second = snapshotManager.update([abTest("test1", "value"), abTest("test2", "value")])
+
+        then:
+        second.generation == first.generation
+        second.getTestStamp(0) == first.getTestStamp(0)
+        second.getTestStamp(1) == first.getTestStamp(1)
+    }
+
+    def "should only restamp the A/B tests which changed"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+
+        when:
+        AbTestsSnapshot first = snapshotManager.update([abTest("test1", "value"), abTest("test2", "value")])
+        AbTestsSnapshot second = snapshotManager.update([abTest("test1", "value"), abTest("test3", "value")])
+
+        then:
+        second.generation == first.generation + 1
+        second.changedTestIds == ["test2", "test3"] as Set
+        second.getTestStamp(0) == first.getTestStamp(0)
+        second.getTestStamp(1) != first.getTestStamp(1)
+    }
+
+    def "should compare the refreshed A/B tests by content, regardless of the order of their filters"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        def variations =
+                [new RunningAbTest.RunningAbTestVariant("A", 50), new RunningAbTest.RunningAbTestVariant("B", null)]
+
+        when:
+        AbTestsSnapshot first = snapshotManager.update(
+                [new RunningAbTest("test1", variations, ["param": ["value"], "other": ["x", "y"]])])
+        AbTestsSnapshot reordered = snapshotManager.update(
+                [new RunningAbTest("test1", variations, ["other": ["x", "y"], "param": ["value"]])])
+        AbTestsSnapshot patternsSwapped = snapshotManager.update(
+                [new RunningAbTest("test1", variations, ["other": ["y", "x"], "param": ["value"]])])
+        AbTestsSnapshot weightSet = snapshotManager.update(
+                [new RunningAbTest(
+                        "test1",
+                        [new RunningAbTest.RunningAbTestVariant("A", 50),
+                         new RunningAbTest.RunningAbTestVariant("B", 0)],
+                        ["other": ["y", "x"], "param": ["value"]])])
+
+        then:
+        reordered.generation == first.generation
+        patternsSwapped.generation == first.generation + 1
+        patternsSwapped.getTestStamp(0) != first.getTestStamp(0)
+        weightSet.generation == first.generation + 2
+    }
+
+    def "should match filters and select variants from the compiled columns"() {
+        given:
+        AbTestsSnapshot snapshot = new AbTestsSnapshotManager().update(
+                [abTest("test1", "value"),
+                 abTest("test2", "val.*"),
+                 new RunningAbTest("test3", [new RunningAbTest.RunningAbTestVariant("C", 100)], ["param": ["["]])])
+
+        expect:
+        snapshot.testCount == 3
+        snapshot.getTestId(1) == "test2"
+        snapshot.getVariantId(1, 1) == "B"
+        snapshot.getVariantWeight(1, 1) == 50
+        snapshot.matches(0, ["param": ["value"]])
+        !snapshot.matches(0, ["param": ["value", "value"]])
+        !snapshot.matches(0, ["other": ["value"]])
+        snapshot.matches(1, ["param": ["valueAndMore"]])
+        !snapshot.matches(2, ["param": ["["]])
+        snapshot.selectVariant(2, "sessionId") == 0
+    }
+
+    def "should not flip back to the previous snapshot for requests which read the cache before a refresh"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        List<RunningAbTest> oldAbTests = [abTest("test1", "value")]
+        List<RunningAbTest> newAbTests = [abTest("test1", "otherValue")]
+
+        when:
+        AbTestsSnapshot oldSnapshot = snapshotManager.update(oldAbTests)
+        AbTestsSnapshot newSnapshot = snapshotManager.update(newAbTests)
+
+        then:
+        snapshotManager.resolve(oldAbTests).is(oldSnapshot)
+        snapshotManager.current().is(newSnapshot)
+    }
+
+    def "should resolve a list which was not passed to update to the current snapshot without building it"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        AbTestsSnapshot snapshot = snapshotManager.update([abTest("test1", "value")])
+
+        expect:
+        snapshotManager.resolve([abTest("test1", "otherValue")]).is(snapshot)
+        snapshotManager.current().is(snapshot)
+    }
+
+    def "should build the snapshot of the cached A/B tests if nothing has been built yet"() {
+        given:
+        AbTestsSnapshotManager snapshotManager = new AbTestsSnapshotManager()
+        List<RunningAbTest> abTests = [abTest("test1", "value")]
+
+        when:
+        AbTestsSnapshot snapshot = snapshotManager.resolve(abTests)
+
+        then:
+        snapshot.isBuiltFrom(abTests)
+        snapshotManager.current().is(snapshot)
+    }
+
+    private static RunningAbTest abTest(String id, String filterValue) {
+        new RunningAbTest(
+                id,
+                [new RunningAbTest.RunningAbTestVariant("A", 50), new RunningAbTest.RunningAbTestVariant("B", 50)],
+                ["param": [filterValue]])
+    }
+}